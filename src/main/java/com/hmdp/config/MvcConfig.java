@@ -1,7 +1,13 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.SeckillRateLimitInterceptor;
+import com.hmdp.utils.SeckillRateLimiter;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.ShopCacheWarmer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -15,6 +21,16 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SeckillRateLimiter seckillRateLimiter;
+
+    @Resource
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    // comma separated ids of the users allowed to change things through the admin endpoints
+    @Value("${hmdp.admin.user-ids:}")
+    private String adminUserIds;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         registry.addInterceptor(new LoginInterceptor()).excludePathPatterns(
@@ -26,6 +42,11 @@ public class MvcConfig implements WebMvcConfigurer {
                 "/user/code",
                 "/user/login"
         ).order(1);
+        // after login, so the per-user bucket knows the user
+        registry.addInterceptor(new SeckillRateLimitInterceptor(seckillRateLimiter, seckillSoldOutRegistry))
+                .addPathPatterns("/voucher-order/seckill/**").order(2);
+        registry.addInterceptor(new AdminInterceptor(ShopCacheWarmer.parseIds(adminUserIds)))
+                .addPathPatterns("/admin/**", "/voucher/seckill/*/replenish").order(2);
         registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
     }
 }
@@ -0,0 +1,175 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRebuildScheduler;
+import com.hmdp.utils.SeckillOrderConsumer;
+import com.hmdp.utils.SeckillRateLimiter;
+import com.hmdp.utils.SnowflakeIdWorker;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopCacheWarmer;
+import com.hmdp.utils.ShopGeoMaintainer;
+import com.hmdp.utils.ShopLocalCache;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.ShopSpatialIndex;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    @Resource
+    private ShopLocalCache shopLocalCache;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+
+    @Resource
+    private ShopGeoMaintainer shopGeoMaintainer;
+
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private SeckillOrderConsumer seckillOrderConsumer;
+
+    @Resource
+    private SeckillRateLimiter seckillRateLimiter;
+
+    @Resource
+    private SnowflakeIdWorker snowflakeIdWorker;
+
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+
+    @PostMapping("/warmup/shop")
+    public Result warmUpShops(
+            @RequestParam(value = "typeIds", required = false) String typeIds,
+            @RequestParam(value = "hotIds", required = false) String hotIds
+    ) {
+        boolean started = shopCacheWarmer.start(ShopCacheWarmer.parseIds(typeIds), ShopCacheWarmer.parseIds(hotIds));
+        return started ? Result.ok() : Result.fail("A shop warm-up is already running");
+    }
+
+    @GetMapping("/warmup/shop")
+    public Result shopWarmUpProgress() {
+        return Result.ok(shopCacheWarmer.progress());
+    }
+
+    @GetMapping("/stats/shop-cache")
+    public Result shopCacheStats() {
+        return Result.ok(shopLocalCache.stats());
+    }
+
+    @GetMapping("/stats/cache")
+    public Result cacheStats() {
+        return Result.ok(cacheClient.stats());
+    }
+
+    @GetMapping("/stats/cache-rebuild")
+    public Result cacheRebuildStats() {
+        return Result.ok(cacheRebuildScheduler.stats());
+    }
+
+    @GetMapping("/stats/shop-bloom")
+    public Result shopBloomStats() {
+        return Result.ok(shopBloomFilter.stats());
+    }
+
+    @GetMapping("/stats/shop-spatial-index")
+    public Result shopSpatialIndexStats() {
+        return Result.ok(shopSpatialIndex.stats());
+    }
+
+    @GetMapping("/stats/shop-geo")
+    public Result shopGeoStats() {
+        return Result.ok(shopGeoMaintainer.stats());
+    }
+
+    @PostMapping("/shop-type/refresh")
+    public Result refreshShopTypes() {
+        return Result.ok(shopTypeService.refreshTypes());
+    }
+
+    @GetMapping("/stats/shop-search")
+    public Result shopSearchStats() {
+        return Result.ok(shopSearchIndex.stats());
+    }
+
+    @GetMapping("/stats/seckill-stream")
+    public Result seckillStreamStats() {
+        return Result.ok(seckillOrderConsumer.stats());
+    }
+
+    @GetMapping("/stats/seckill-rate-limit")
+    public Result seckillRateLimitStats() {
+        return Result.ok(seckillRateLimiter.stats());
+    }
+
+    /**
+     * override the bucket of one voucher, rate <= 0 removes its limit
+     */
+    @PutMapping("/seckill/{id}/rate-limit")
+    public Result setSeckillRateLimit(@PathVariable("id") Long voucherId,
+                                      @RequestParam("rate") Double rate,
+                                      @RequestParam(value = "burst", required = false) Double burst) {
+        seckillRateLimiter.setVoucherLimit(voucherId, rate, burst);
+        return Result.ok();
+    }
+
+    @DeleteMapping("/seckill/{id}/rate-limit")
+    public Result removeSeckillRateLimit(@PathVariable("id") Long voucherId) {
+        seckillRateLimiter.removeVoucherLimit(voucherId);
+        return Result.ok();
+    }
+
+    @GetMapping("/seckill/dlq")
+    public Result seckillDeadLetters(@RequestParam(value = "count", defaultValue = "20") Integer count) {
+        return Result.ok(seckillOrderConsumer.deadLetters(count));
+    }
+
+    /**
+     * replay the given dead letters, or the oldest page when no ids are given
+     */
+    @PostMapping("/seckill/dlq/replay")
+    public Result replaySeckillDeadLetters(@RequestParam(value = "ids", required = false) List<String> ids,
+                                           @RequestParam(value = "count", defaultValue = "20") Integer count) {
+        if (ids == null || ids.isEmpty()) {
+            ids = new ArrayList<>();
+            for (Map<String, Object> letter : seckillOrderConsumer.deadLetters(count)) {
+                ids.add((String) letter.get("id"));
+            }
+        }
+        return Result.ok(seckillOrderConsumer.replayDeadLetters(ids));
+    }
+
+    @GetMapping("/stats/id-worker")
+    public Result idWorkerStats() {
+        return Result.ok(snowflakeIdWorker.stats());
+    }
+
+    @PostMapping("/shop-geo/reconcile")
+    public Result reconcileShopGeo() {
+        shopGeoMaintainer.reconcile();
+        return Result.ok(shopGeoMaintainer.stats());
+    }
+}
@@ -1,8 +1,6 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
@@ -10,6 +8,7 @@ import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 
 @RestController
@@ -24,12 +23,18 @@ public class ShopController {
         return shopService.queryById(id);
     }
 
+    @GetMapping("/batch")
+    public Result queryShopByIds(@RequestParam("ids") List<Long> ids) {
+        if (ids.size() > SystemConstants.MAX_BATCH_SIZE) {
+            return Result.fail("Too many shop ids, at most " + SystemConstants.MAX_BATCH_SIZE);
+        }
+        return Result.ok(shopService.queryByIds(ids));
+    }
+
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
 
-        shopService.save(shop);
-
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     @PutMapping
@@ -44,8 +49,13 @@ public class ShopController {
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             @RequestParam(value = "x", required = false) Double x,
-            @RequestParam(value = "y", required = false) Double y
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
+        // keyset paging when a cursor is sent, an empty one asks for the first page
+        if (cursor != null && (x == null || y == null)) {
+            return shopService.queryShopByTypeId(typeId, cursor);
+        }
 
         return shopService.queryShopByTypeId(typeId, current, x, y);
     }
@@ -54,13 +64,14 @@ public class ShopController {
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
+        // the ranked index with keyset paging when a cursor is sent, an empty one asks for the first page
+        if (cursor != null) {
+            return shopService.queryShopByName(name, cursor);
+        }
 
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, current);
     }
 }
@@ -0,0 +1,29 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorResult {
+    private List<?> list;
+    // pass back to fetch the next page, null on the last page
+    private String cursor;
+
+    /**
+     * @param rows     up to {@code size + 1} rows, the extra one only signals that a next page exists
+     * @param cursorOf cursor pointing after the given row
+     */
+    public static <T> CursorResult of(List<T> rows, int size, Function<T, String> cursorOf) {
+        if (rows.size() <= size) {
+            return new CursorResult(rows, null);
+        }
+        List<T> page = rows.subList(0, size);
+        return new CursorResult(page, cursorOf.apply(page.get(size - 1)));
+    }
+}
@@ -16,6 +16,10 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryHotBlog(Integer current);
 
+    Result queryHotBlogByCursor(String cursor);
+
+    Result queryBlogOfUser(Long userId, String cursor);
+
     Result queryBlogById(Long id);
 
     Result likeBlog(Long id);
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,7 +18,17 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id) throws InterruptedException;
 
+    List<Shop> queryByIds(List<Long> ids);
+
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
 
+    Result queryShopByName(String name, String cursor);
+
+    Result queryShopByName(String name, Integer current);
+
+    Result queryShopByTypeId(Integer typeId, String cursor);
+
     Result queryShopByTypeId(Integer typeId, Integer current, Double x, Double y);
 }
@@ -2,6 +2,7 @@ package com.hmdp.service;
 
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
+import com.hmdp.utils.ShopTypeSnapshot;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 /**
@@ -15,4 +16,12 @@ import com.baomidou.mybatisplus.extension.service.IService;
 public interface IShopTypeService extends IService<ShopType> {
 
     Result queryTypeList();
+
+    ShopTypeSnapshot snapshot();
+
+    /**
+     * Drop the cached types and bump the version, every node reloads its snapshot.
+     * @return the new version
+     */
+    long refreshTypes();
 }
@@ -4,6 +4,7 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
@@ -15,6 +16,8 @@ import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CursorUtils;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
@@ -24,9 +27,12 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
 import static com.hmdp.utils.RedisConstants.FEED_KEY;
 
 
@@ -42,12 +48,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
     @Override
     public Result queryHotBlog(Integer current) {
         // query by user ID
         Page<Blog> page = query()
                 .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE, false));
 
         List<Blog> records = page.getRecords();
 
@@ -58,9 +67,44 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(records);
     }
 
+    // keyset page on (liked, id), page N costs the same as page 1
+    @Override
+    public Result queryHotBlogByCursor(String cursor) {
+        long[] after = CursorUtils.decode(cursor, 2);
+        List<Blog> records = query()
+                .and(after != null, w -> w
+                        .lt("liked", after[0])
+                        .or(o -> o.eq("liked", after[0]).lt("id", after[1])))
+                .orderByDesc("liked", "id")
+                .last("LIMIT " + (SystemConstants.MAX_PAGE_SIZE + 1))
+                .list();
+        // the extra row only tells whether a next page exists
+        records.stream().limit(SystemConstants.MAX_PAGE_SIZE).forEach(blog -> {
+            this.queryBlogUser(blog);
+            this.isBlogLiked(blog);
+        });
+        return Result.ok(CursorResult.of(records, SystemConstants.MAX_PAGE_SIZE,
+                blog -> CursorUtils.encode(blog.getLiked() == null ? 0 : blog.getLiked(), blog.getId())));
+    }
+
+    // keyset page on (user_id, id), newest first
+    @Override
+    public Result queryBlogOfUser(Long userId, String cursor) {
+        long[] after = CursorUtils.decode(cursor, 1);
+        List<Blog> records = query()
+                .eq("user_id", userId)
+                .lt(after != null, "id", after == null ? null : after[0])
+                .orderByDesc("id")
+                .last("LIMIT " + (SystemConstants.MAX_PAGE_SIZE + 1))
+                .list();
+        return Result.ok(CursorResult.of(records, SystemConstants.MAX_PAGE_SIZE,
+                blog -> CursorUtils.encode(blog.getId())));
+    }
+
     @Override
     public Result queryBlogById(Long id) {
-        Blog blog = getById(id);
+        Blog blog = cacheClient.queryWithPassThrough(
+                CACHE_BLOG_KEY, id, Blog.class, this::getById, CACHE_BLOG_TTL, TimeUnit.MINUTES);
         if (blog == null) {
             return Result.fail("Blog not found");
         }
@@ -83,12 +127,14 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
             if (BooleanUtil.isTrue(isSuccess)) {
                 stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
+                stringRedisTemplate.delete(CACHE_BLOG_KEY + id);
             }
         } else {
             // if yes, liked -= 1, remove userId from Redis
             boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
             if (BooleanUtil.isTrue(isSuccess)) {
                 stringRedisTemplate.opsForZSet().remove(key, userId.toString());
+                stringRedisTemplate.delete(CACHE_BLOG_KEY + id);
             }
         }
         return Result.ok();
@@ -1,181 +1,193 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisConstants;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.CursorUtils;
+import com.hmdp.utils.GeoHashUtils;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopChangeEvent;
+import com.hmdp.utils.ShopChangePublisher;
+import com.hmdp.utils.ShopLocalCache;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.ShopSpatialIndex;
 import com.hmdp.utils.SystemConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
 
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
-    @Override
-    public Result queryById(Long id) throws InterruptedException {
+    @Resource
+    private ShopLocalCache shopLocalCache;
 
-        Shop shop = queryWithLogicalExpire(id);
+    @Resource
+    private CacheClient cacheClient;
 
-//        Shop shop = queryWithMutex(id);
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
 
-        if (shop == null) {
-            return Result.fail("The shop is not exist");
-        }
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
 
-        return Result.ok(shop);
-    }
+    @Resource
+    private ShopChangePublisher shopChangePublisher;
 
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Value("${hmdp.cache.shop-strategy:logical_expire}")
+    private String shopStrategyName;
 
-    // apply logical expire to solve cache breakdown
-    public Shop queryWithLogicalExpire(Long id) throws InterruptedException {
-        String key = CACHE_SHOP_KEY + id;
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
+    private CacheStrategy shopStrategy;
 
-        // query on cache, if not hit, save data into cache
-        if (StrUtil.isBlank(shopJson)) {
-            saveShop2Redis(id, 30L);
-            Shop shop = getById(id);
-            return shop;
-        }
+    @Value("${hmdp.shop.geo.scroll-session:true}")
+    private boolean geoScrollSession;
 
-        // if hits, check whether it is expired.
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
+    // redis: GEOSEARCH with the in-memory index as fallback, local: in-memory index only
+    @Value("${hmdp.shop.geo.engine:redis}")
+    private String geoEngine;
 
-        // if not expired, return shop
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            return shop;
-        }
+    // cache the first nearby page per geohash cell, shared by everyone standing in it
+    @Value("${hmdp.shop.geo.cell-cache:true}")
+    private boolean geoCellCache;
 
-        // if expired, rewrite data into cache
-        String lockKey = CACHE_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        if (isLock) {
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    this.saveShop2Redis(id, 30L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    unlock(lockKey);
-                }
-            });
-        }
+    @Value("${hmdp.shop.geo.cell-precision:7}")
+    private int geoCellPrecision;
 
-        return shop;
+    @PostConstruct
+    private void init() {
+        shopStrategy = CacheStrategy.valueOf(shopStrategyName.toUpperCase());
     }
 
-    // apply mutex lock to solve cache breakdown:
-    public Shop queryWithMutex(Long id) {
-        String key = CACHE_SHOP_KEY + id;
+    @Override
+    public Result queryById(Long id) throws InterruptedException {
 
-        // get shop information from cache
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
+        // solve cache penetration: unknown ids never reach redis or the database
+        if (!shopBloomFilter.mightContain(id)) {
+            return Result.fail("The shop is not exist");
+        }
 
-        // if exists, return shop
-        if (StrUtil.isNotBlank(shopJson)) {
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return shop;
+        // check the in-process cache first, it saves a redis round trip for hot shops
+        Shop shop = shopLocalCache.get(id);
+        if (shop != null) {
+            return Result.ok(shop);
         }
 
-        // solve cache penetration: if hit null value, return error
-        if (shopJson != null) {
-            return null;
+        if (shopStrategy == CacheStrategy.LOGICAL_EXPIRE) {
+            shop = cacheClient.queryWithLogicalExpire(
+                    CACHE_SHOP_KEY, id, Shop.class, this::loadShop, CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
+        } else {
+            shop = cacheClient.query(
+                    shopStrategy, CACHE_SHOP_KEY, id, Shop.class, this::loadShop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         }
 
-        // get mutex lock
-        String lockKey = null;
-        Shop shop = null;
-        try {
-            lockKey = LOCK_SHOP_KEY + id;
-            boolean isLock = tryLock(lockKey);
+        if (shop == null) {
+            return Result.fail("The shop is not exist");
+        }
 
-            // if not lock, sleep and retry later
-            if (!isLock) {
-                Thread.sleep(10);
-                return queryWithMutex(id);
-            }
-            // get shop information from database
-            shop = getById(id);
-
-            // if locks, query by id in database
-            // if not exists in database, return error
-            if (shop == null) {
-                // solve cache penetration: save null value into cache
-                stringRedisTemplate.opsForValue().set(
-                        key,
-                        "",
-                        CACHE_NULL_TTL + RandomUtil.randomNumber(),
-                        TimeUnit.MINUTES);
-                return null;
-            }
+        shopLocalCache.put(id, shop);
+        return Result.ok(shop);
+    }
 
-            // save the shop into cache
-            stringRedisTemplate.opsForValue().set(
-                    key,
-                    JSONUtil.toJsonStr(shop),
-                    CACHE_SHOP_TTL + RandomUtil.randomNumber(),
-                    TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // release mutex lock
-            unlock(lockKey);
+    // database load behind the cache, an id that passed the bloom filter but is not in the database is a
+    // false positive. cached empty values never get here, so a missing id counts once until its empty value expires
+    private Shop loadShop(Long id) {
+        Shop shop = getById(id);
+        if (shop == null) {
+            shopBloomFilter.recordFalsePositive();
         }
-
         return shop;
     }
 
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", LOCK_SHOP_TTL, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
-    }
+    @Override
+    public List<Shop> queryByIds(List<Long> ids) {
+        // local hits first, unknown ids are dropped by the bloom filter
+        Map<Long, Shop> found = new HashMap<>();
+        Set<Long> remaining = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (found.containsKey(id) || !shopBloomFilter.mightContain(id)) {
+                continue;
+            }
+            Shop shop = shopLocalCache.get(id);
+            if (shop != null) {
+                found.put(id, shop);
+            } else {
+                remaining.add(id);
+            }
+        }
 
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
-    }
+        if (!remaining.isEmpty()) {
+            if (shopStrategy == CacheStrategy.LOGICAL_EXPIRE) {
+                // one MGET, one IN query for the misses, one pipelined write-back
+                Map<Long, Shop> loaded = cacheClient.queryBatchWithLogicalExpire(
+                        CACHE_SHOP_KEY, remaining, Shop.class, this::listByIds, Shop::getId,
+                        CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS);
+                loaded.forEach(shopLocalCache::put);
+                found.putAll(loaded);
+            } else {
+                // the other strategies store plain values, resolve them one by one
+                for (Long id : remaining) {
+                    Shop shop = cacheClient.query(
+                            shopStrategy, CACHE_SHOP_KEY, id, Shop.class, this::loadShop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+                    if (shop != null) {
+                        shopLocalCache.put(id, shop);
+                        found.put(id, shop);
+                    }
+                }
+            }
+        }
 
-    // save logical expire to redis
-    private void saveShop2Redis(Long id, Long expireSeconds) throws InterruptedException {
-        Shop shop = getById(id);
-        Thread.sleep(200);
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        // keep the requested order, skip ids that do not exist
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Shop shop = found.get(id);
+            if (shop != null) {
+                shops.add(shop);
+            }
+        }
+        return shops;
     }
 
+    @Override
+    public Result saveShop(Shop shop) {
+        save(shop);
+        // make the new id visible to the penetration guard
+        shopBloomFilter.add(shop.getId());
+        shopChangePublisher.publish(new ShopChangeEvent(ShopChangeEvent.CREATE, shop.getId(), null, shop));
+        return Result.ok(shop.getId());
+    }
 
     // update database, delete cache
     @Override
@@ -185,57 +197,230 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (id == null) {
             return Result.fail("The shop id cannot be empty");
         }
+        Shop before = getById(id);
         // update database
         updateById(shop);
         // delete cache
         stringRedisTemplate.delete(CACHE_SHOP_KEY + shop.getId());
+        // evict the in-process copies on every node
+        shopLocalCache.invalidate(shop.getId());
+        // the request may be partial, publish the full row
+        shopChangePublisher.publish(new ShopChangeEvent(ShopChangeEvent.UPDATE, id, before, getById(id)));
         return Result.ok();
     }
 
+    @Override
+    public Result queryShopByName(String name, String cursor) {
+        if (!shopSearchIndex.isReady()) {
+            // the index is still loading, serve from the database in the same order with the same cursor
+            long[] after = CursorUtils.decode(cursor, 3);
+            List<Shop> shops = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .and(after != null, w -> w
+                            .lt("score", after[0])
+                            .or(o -> o.eq("score", after[0]).lt("sold", after[1]))
+                            .or(o -> o.eq("score", after[0]).eq("sold", after[1]).lt("id", after[2])))
+                    .orderByDesc("score", "sold", "id")
+                    .last("LIMIT " + (SystemConstants.MAX_PAGE_SIZE + 1))
+                    .list();
+            return Result.ok(CursorResult.of(shops, SystemConstants.MAX_PAGE_SIZE,
+                    shop -> CursorUtils.encode(shop.getScore(), shop.getSold(), shop.getId())));
+        }
+        ShopSearchIndex.Page page = shopSearchIndex.search(name, cursor, SystemConstants.MAX_PAGE_SIZE);
+        // bodies come from the shop cache, in rank order
+        return Result.ok(new CursorResult(queryByIds(page.getIds()), page.getCursor()));
+    }
+
+    // offset paging for clients that send current, a plain list as before
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        Page<Shop> page = query()
+                .like(StrUtil.isNotBlank(name), "name", name)
+                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+        return Result.ok(page.getRecords());
+    }
+
     @Override
     public Result queryShopByTypeId(Integer typeId, Integer current, Double x, Double y) {
         // check if coordinate-based query is needed
         if (x == null || y == null) {
             Page<Shop> page = query()
                     .eq("type_id", typeId)
-                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE, false));
             return Result.ok(page.getRecords());
         }
-        // calculate page parameters
-        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
-        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
-        // query redis
+        // with a cell cache or scroll session every page is searched from one anchor, the center of the
+        // caller's geohash cell, so all pages slice the same ordering and page boundaries line up.
+        // the radius grows by the cell's half diagonal, so nothing within reach of any point of the cell is missed
+        String cell = null;
+        double[] anchor = {x, y};
+        double radius = SHOP_GEO_RADIUS;
+        if (geoCellCache || geoScrollSession) {
+            cell = GeoHashUtils.encode(x, y, geoCellPrecision);
+            anchor = GeoHashUtils.decode(cell);
+            radius += halfDiagonal(anchor, GeoHashUtils.cellSize(geoCellPrecision));
+        }
+        List<Shop> shops;
+        if (current == 1 && geoCellCache) {
+            shops = queryFirstPageFromCell(typeId, cell, anchor, radius);
+        } else {
+            // calculate page parameters
+            int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+            int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+            // ids and distances of this page, in distance order
+            shops = loadShops(searchNearby(typeId, cell, from, end, anchor[0], anchor[1], radius));
+        }
+        if (cell != null) {
+            // the page is cut from the anchor's order, show and sort it by the distance from the caller's point
+            List<Shop> near = new ArrayList<>(shops.size());
+            for (Shop shop : shops) {
+                shop.setDistance(ShopSpatialIndex.distance(x, y, shop.getX(), shop.getY()));
+                if (shop.getDistance() <= SHOP_GEO_RADIUS) {
+                    near.add(shop);
+                }
+            }
+            near.sort(Comparator.comparingDouble(Shop::getDistance));
+            shops = near;
+        }
+        return Result.ok(shops);
+    }
+
+    // meters from the center of a cell to its farthest corner, a degree of longitude is longest nearer the equator
+    private static double halfDiagonal(double[] center, double[] size) {
+        double cornerX = center[0] + size[0] / 2;
+        return Math.max(
+                ShopSpatialIndex.distance(center[0], center[1], cornerX, center[1] - size[1] / 2),
+                ShopSpatialIndex.distance(center[0], center[1], cornerX, center[1] + size[1] / 2));
+    }
+
+    // keyset page on (type_id, id), page N costs the same as page 1
+    @Override
+    public Result queryShopByTypeId(Integer typeId, String cursor) {
+        long[] after = CursorUtils.decode(cursor, 1);
+        List<Shop> shops = query()
+                .eq("type_id", typeId)
+                .gt(after != null, "id", after == null ? null : after[0])
+                .orderByAsc("id")
+                .last("LIMIT " + (SystemConstants.DEFAULT_PAGE_SIZE + 1))
+                .list();
+        return Result.ok(CursorResult.of(shops, SystemConstants.DEFAULT_PAGE_SIZE,
+                shop -> CursorUtils.encode(shop.getId())));
+    }
+
+    // the first page of a geohash cell, searched once from the cell center like the later pages
+    private List<Shop> queryFirstPageFromCell(Integer typeId, String cell, double[] center, double radius) {
+        String key = CACHE_SHOP_GEO_CELL_KEY + typeId + ":" + cell;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (json != null) {
+            return JSONUtil.toList(json, Shop.class);
+        }
+        List<Shop> shops = loadShops(
+                searchNearby(typeId, cell, 0, SystemConstants.DEFAULT_PAGE_SIZE, center[0], center[1], radius));
+        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shops), CACHE_SHOP_GEO_CELL_TTL, TimeUnit.SECONDS);
+        return shops;
+    }
+
+    // shop bodies for a page of geo results through the shop cache, in geo rank order
+    private List<Shop> loadShops(Map<Long, Double> distanceMap) {
+        if (distanceMap.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Shop> cached = queryByIds(new ArrayList<>(distanceMap.keySet()));
+        List<Shop> shops = new ArrayList<>(cached.size());
+        for (Shop shop : cached) {
+            // the local cache hands out shared instances, never set the distance on them
+            Shop copy = BeanUtil.copyProperties(shop, Shop.class);
+            shops.add(copy.setDistance(distanceMap.get(shop.getId())));
+        }
+        return shops;
+    }
+
+    // cell names the scroll session, null when sessions are off
+    private Map<Long, Double> searchNearby(Integer typeId, String cell, int from, int end, Double x, Double y, double radius) {
+        if ("local".equalsIgnoreCase(geoEngine)) {
+            return searchLocal(typeId, from, end, x, y, radius);
+        }
+        try {
+            Map<Long, Double> distanceMap = geoScrollSession
+                    ? searchGeoWithSession(typeId, cell, from, end, x, y, radius)
+                    : searchGeo(typeId, from, end, x, y, radius);
+            // an empty page is only trusted when the geo set exists
+            if (distanceMap.isEmpty() && shopSpatialIndex.isReady()
+                    && !Boolean.TRUE.equals(stringRedisTemplate.hasKey(SHOP_GEO_KEY + typeId))) {
+                log.warn("geo key {} is missing, serving nearby shops from the local index", SHOP_GEO_KEY + typeId);
+                return searchLocal(typeId, from, end, x, y, radius);
+            }
+            return distanceMap;
+        } catch (DataAccessException e) {
+            if (!shopSpatialIndex.isReady()) {
+                throw e;
+            }
+            log.warn("geo search failed, serving nearby shops from the local index", e);
+            return searchLocal(typeId, from, end, x, y, radius);
+        }
+    }
+
+    // top `end` from the in-memory index, skip to `from`
+    private Map<Long, Double> searchLocal(Integer typeId, int from, int end, Double x, Double y, double radius) {
+        Map<Long, Double> distanceMap = new LinkedHashMap<>();
+        shopSpatialIndex.search(typeId.longValue(), x, y, radius, end)
+                .entrySet().stream().skip(from)
+                .forEach(e -> distanceMap.put(e.getKey(), e.getValue()));
+        return distanceMap;
+    }
+
+    // GEOSEARCH the first `end` shops and skip to `from`
+    private Map<Long, Double> searchGeo(Integer typeId, int from, int end, Double x, Double y, double radius) {
         String key = SHOP_GEO_KEY + typeId;
         GeoResults<RedisGeoCommands.GeoLocation<String>> geoResults = stringRedisTemplate.opsForGeo()
                 .search(
                         key,
                         GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
+                        new Distance(radius),
                         RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
                 );
+        Map<Long, Double> distanceMap = new LinkedHashMap<>();
         if (geoResults == null) {
-            return Result.ok(Collections.emptyList());
+            return distanceMap;
         }
         // extract shopId
         List<GeoResult<RedisGeoCommands.GeoLocation<String>>> content = geoResults.getContent();
-        List<Long> ids = new ArrayList<>();
-        Map<String, Distance> distanceMap = new HashMap<>();
-        if (from >= content.size()) {
-            return Result.ok(Collections.emptyList());
-        }
-        content.stream().skip(from).forEach(result -> {
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-        // query shop by id
-        String idsStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id, " + idsStr + ")").list();
-        for (Shop shop: shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
-        }
-        // return result
-        return Result.ok(shops);
+        content.stream().skip(from).forEach(result -> distanceMap.put(
+                Long.valueOf(result.getContent().getName()), result.getDistance().getValue()));
+        return distanceMap;
+    }
+
+    // slice the page out of a short-lived sorted set holding the whole search result,
+    // so page N costs one ZRANGE just like page 1. (x, y) is the center of the geohash cell,
+    // nearby users and successive pages share one session
+    private Map<Long, Double> searchGeoWithSession(Integer typeId, String cell, int from, int end, Double x, Double y, double radius) {
+        String sessionKey = SHOP_GEO_SESSION_KEY + typeId + ":" + cell;
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(sessionKey))) {
+            // GEOSEARCHSTORE with STOREDIST: the result never leaves redis, scores are distances in meters
+            Long stored = stringRedisTemplate.opsForGeo().searchAndStore(
+                    SHOP_GEO_KEY + typeId,
+                    sessionKey,
+                    GeoReference.fromCoordinate(x, y),
+                    new Distance(radius),
+                    RedisGeoCommands.GeoSearchStoreCommandArgs.newGeoSearchStoreArgs()
+                            .sortAscending()
+                            .limit(SHOP_GEO_SESSION_LIMIT)
+                            .storeDistance()
+            );
+            if (stored == null || stored == 0) {
+                return new LinkedHashMap<>();
+            }
+            stringRedisTemplate.expire(sessionKey, SHOP_GEO_SESSION_TTL, TimeUnit.SECONDS);
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                stringRedisTemplate.opsForZSet().rangeWithScores(sessionKey, from, end - 1);
+        Map<Long, Double> distanceMap = new LinkedHashMap<>();
+        if (tuples == null) {
+            return distanceMap;
+        }
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            distanceMap.put(Long.valueOf(tuple.getValue()), tuple.getScore());
+        }
+        return distanceMap;
     }
 }
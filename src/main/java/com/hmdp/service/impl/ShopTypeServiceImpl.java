@@ -1,23 +1,32 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.util.RandomUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.ShopTypeSnapshot;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
-import static com.hmdp.utils.RedisConstants.CACHE_SHOPTYPE_KEY;
-import static com.hmdp.utils.RedisConstants.CACHE_SHOPTYPE_TTL;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -27,35 +36,121 @@ import static com.hmdp.utils.RedisConstants.CACHE_SHOPTYPE_TTL;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Resource
+    private CacheClient cacheClient;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private volatile ShopTypeSnapshot snapshot;
+
+    @PostConstruct
+    private void init() {
+        // every node reloads when the version moves
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            try {
+                reloadIfNewer(Long.parseLong(body));
+            } catch (NumberFormatException e) {
+                log.warn("invalid shop type change message: {}", body);
+            }
+        }, new ChannelTopic(CACHE_SHOPTYPE_CHANGE_CHANNEL));
+    }
+
     @Override
     public Result queryTypeList() {
-        String shopTypeJson = stringRedisTemplate.opsForValue().get(CACHE_SHOPTYPE_KEY);
+        List<ShopType> shopType = snapshot().getTypes();
+        if (shopType.isEmpty()) {
+            return Result.fail("No such shop type");
+        }
+        return Result.ok(shopType);
+    }
 
-        if (StrUtil.isNotBlank(shopTypeJson)) {
-            List<ShopType> shopType = JSONUtil.toList(shopTypeJson, ShopType.class);
-            return Result.ok(shopType);
+    @Override
+    public ShopTypeSnapshot snapshot() {
+        ShopTypeSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = load();
+                    snapshot = current;
+                }
+            }
         }
+        return current;
+    }
 
-        List<ShopType> shopType = query()
-                .orderByAsc("sort")
-                .list();
+    @Override
+    public long refreshTypes() {
+        stringRedisTemplate.delete(CACHE_SHOPTYPE_KEY);
+        Long version = stringRedisTemplate.opsForValue().increment(CACHE_SHOPTYPE_VERSION_KEY);
+        stringRedisTemplate.convertAndSend(CACHE_SHOPTYPE_CHANGE_CHANNEL, String.valueOf(version));
+        return version == null ? 0 : version;
+    }
 
-        if (shopType == null || shopType.isEmpty()) {
-            return Result.fail("No such shop type");
+    // catches a missed pub/sub message
+    @Scheduled(fixedDelayString = "${hmdp.shop-type.version-check-ms:30000}")
+    public void checkVersion() {
+        if (snapshot == null) {
+            return;
         }
+        try {
+            reloadIfNewer(currentVersion());
+        } catch (Exception e) {
+            log.warn("failed to check shop type version", e);
+        }
+    }
 
-        stringRedisTemplate.opsForValue().set(
+    private void reloadIfNewer(long version) {
+        ShopTypeSnapshot current = snapshot;
+        if (current != null && current.getVersion() >= version) {
+            return;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.getVersion() < version) {
+                snapshot = load();
+                log.info("shop type snapshot reloaded, version: {}", snapshot.getVersion());
+            }
+        }
+    }
+
+    private ShopTypeSnapshot load() {
+        // read the version first, a change racing with the load bumps it again and reloads
+        long version = currentVersion();
+        List<ShopType> types = cacheClient.queryListWithPassThrough(
                 CACHE_SHOPTYPE_KEY,
-                JSONUtil.toJsonStr(shopType),
+                ShopType.class,
+                () -> query().orderByAsc("sort").list(),
                 CACHE_SHOPTYPE_TTL + RandomUtil.randomNumber(),
                 TimeUnit.MINUTES);
+        types = types == null ? Collections.emptyList() : Collections.unmodifiableList(types);
+        Result result = types.isEmpty() ? Result.fail("No such shop type") : Result.ok(types);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("failed to serialize shop types", e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        String etag = "\"" + version + "-" + Long.toHexString(crc.getValue()) + "\"";
+        return new ShopTypeSnapshot(version, types, body, etag);
+    }
 
-        return Result.ok(shopType);
+    private long currentVersion() {
+        String version = stringRedisTemplate.opsForValue().get(CACHE_SHOPTYPE_VERSION_KEY);
+        return version == null ? 0 : Long.parseLong(version);
     }
 }
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
@@ -8,28 +7,18 @@ import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.ShardedSeckillStock;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.time.Duration;
 import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @Slf4j
 @Service
@@ -45,7 +34,10 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private RedissonClient redissonClient;
+    private ShardedSeckillStock shardedSeckillStock;
+
+    @Resource
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
 
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
 
@@ -55,118 +47,41 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
-
-    @PostConstruct
-    private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-    }
-
-    private class VoucherOrderHandler implements Runnable {
-        String queueName = "stream.orders";
-
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    // get message from message queue
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
-                    );
-
-                    // check if the message is got, if no, continue
-                    if (list == null || list.isEmpty()) {
-                        continue;
-                    }
-
-                    // if yes, then create order
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    handleVoucherOrder(voucherOrder);
-
-                    // xack
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-
-                } catch (Exception e) {
-                    log.error("handling order error", e);
-                    handlePendingList();
-                }
-            }
-        }
-
-        private void handlePendingList() {
-            while (true) {
-                try {
-                    // get message from message queue
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create(queueName, ReadOffset.from("0"))
-                    );
-
-                    // check if the message is got from pending-list , if no, break loop
-                    if (list == null || list.isEmpty()) {
-                        break;
-                    }
-
-                    // if yes, then create order
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    handleVoucherOrder(voucherOrder);
-
-                    // xack
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-
-                } catch (Exception e) {
-                    log.error("handling order error", e);
-                }
-            }
-        }
-    }
-
-
-
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        Long userId = voucherOrder.getUserId();
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        boolean isLock = lock.tryLock();
-        if (!isLock) {
-            log.error("You can only make one order");
-        }
-        try {
-            proxy.createVoucherOrder(voucherOrder);
-        } finally {
-            lock.unlock();
-        }
-    }
-
-
-    // improve the efficiency of coupon order
-    private IVoucherOrderService proxy;
+    // orders are persisted asynchronously by SeckillOrderConsumer
     @Override
     public Result seckillorder(Long voucherId) {
 
+        // late clickers are turned away without an id or a script call
+        if (seckillSoldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("The voucher has been sold out");
+        }
+
         Long userId = UserHolder.getUser().getId();
 
         long orderId = redisIdWorker.nextId("order");
+        long observedAt = System.currentTimeMillis();
+
+        int r;
+        int shards = shardedSeckillStock.shards(voucherId);
+        if (shards > 0) {
+            r = shardedSeckillStock.seckill(voucherId, userId, orderId, shards);
+        } else {
+            Long result = stringRedisTemplate.execute(
+                    SECKILL_SCRIPT,
+                    Collections.emptyList(),
+                    voucherId.toString(), userId.toString(), String.valueOf(orderId)
+            );
+            r = result.intValue();
+        }
 
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(), String.valueOf(orderId)
-        );
-        int r = result.intValue();
+        if (r == 1) {
+            seckillSoldOutRegistry.soldOut(voucherId, observedAt);
+        }
 
         if (r != 0) {
             return Result.fail(r == 1 ? "The voucher has been sold out" : "You can only make one order");
         }
 
-        proxy = (IVoucherOrderService)  AopContext.currentProxy();
-
         return Result.ok(orderId);
     }
 
@@ -174,10 +89,11 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     public void createVoucherOrder(VoucherOrder voucherOrder) {
         Long userId = voucherOrder.getUserId();
 
-        // make a limitation on number of purchases
+        // make a limitation on number of purchases, a redelivered order is already done
         int count = query().eq("user_id", userId).eq("voucher_id", voucherOrder.getVoucherId()).count();
         if (count > 0) {
-            log.error("You have purchased this voucher already");
+            log.warn("You have purchased this voucher already");
+            return;
         }
 
         // stock deduction, applying optimistic lock to avoid product oversold problem
@@ -187,7 +103,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .gt("stock", 0)
                 .update();
         if (!success) {
-            log.error("Stock deduction failed");
+            throw new IllegalStateException("Stock deduction failed, voucher: " + voucherOrder.getVoucherId());
         }
 
         // create order
@@ -7,14 +7,22 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.ShardedSeckillStock;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
 
 /**
  * <p>
@@ -24,6 +32,7 @@ import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
 
@@ -33,10 +42,21 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShardedSeckillStock shardedSeckillStock;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        List<Voucher> vouchers = cacheClient.queryListWithPassThrough(
+                CACHE_VOUCHER_KEY + shopId,
+                Voucher.class,
+                () -> getBaseMapper().queryVoucherOfShop(shopId),
+                CACHE_VOUCHER_TTL,
+                TimeUnit.MINUTES);
         // 返回结果
         return Result.ok(vouchers);
     }
@@ -54,7 +74,45 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // single key, or split across shards for big stocks
+        shardedSeckillStock.init(voucher.getId(), voucher.getStock());
+        // 清除店铺优惠券列表缓存
+        stringRedisTemplate.delete(CACHE_VOUCHER_KEY + voucher.getShopId());
 
     }
+
+    @Override
+    @Transactional
+    public Result replenishSeckillStock(Long voucherId, Integer amount) {
+        if (amount == null || amount <= 0) {
+            return Result.fail("The amount must be positive");
+        }
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + amount)
+                .eq("voucher_id", voucherId)
+                .update();
+        if (!success) {
+            return Result.fail("No such seckill voucher");
+        }
+        Voucher voucher = getById(voucherId);
+        // redis only follows once MySQL has the stock, a rolled back replenish must not be sellable
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                try {
+                    shardedSeckillStock.replenish(voucherId, amount);
+                    // every node drops its sold-out flag, and ignores sold-out marks seen before now
+                    stringRedisTemplate.convertAndSend(
+                            SECKILL_RESTOCK_CHANNEL, voucherId + ":" + System.currentTimeMillis());
+                    if (voucher != null) {
+                        stringRedisTemplate.delete(CACHE_VOUCHER_KEY + voucher.getShopId());
+                    }
+                } catch (Exception e) {
+                    // MySQL is ahead of redis now, which undersells but never oversells
+                    log.error("stock of voucher {} was raised by {} in MySQL but not in redis", voucherId, amount, e);
+                }
+            }
+        });
+        return Result.ok();
+    }
 }
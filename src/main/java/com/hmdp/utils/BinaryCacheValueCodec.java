@@ -0,0 +1,218 @@
+package com.hmdp.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact binary format for {@link RedisData}.
+ * <pre>
+ * header:  magic(1) version(1) expireEpochMillis(8) rebuildMillis(4, since version 2)
+ * payload: schemaHash(4) nullBitmap(ceil(n/8)) field values in field-name order
+ * </pre>
+ * Field names are not stored, the schema of the target class is derived once by reflection
+ * and its hash guards against reading a payload written by a different version of the class.
+ * Classes with unsupported field types are written as JSON instead.
+ */
+public class BinaryCacheValueCodec implements CacheValueCodec {
+
+    private static final byte MAGIC = (byte) 0xCB;
+    private static final byte VERSION = 2;
+    private static final int V1_HEADER_LENGTH = 10;
+    private static final int HEADER_LENGTH = 14;
+
+    private static final Set<Class<?>> SUPPORTED_TYPES = new HashSet<>(Arrays.asList(
+            Long.class, long.class, Integer.class, int.class, Double.class, double.class,
+            Boolean.class, boolean.class, String.class, LocalDateTime.class));
+
+    private static final Map<Class<?>, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+    private final CacheValueCodec fallback;
+
+    public BinaryCacheValueCodec(CacheValueCodec fallback) {
+        this.fallback = fallback;
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length >= V1_HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(RedisData redisData) {
+        Schema schema = schemaOf(redisData.getData().getClass());
+        if (schema == null) {
+            return fallback.encode(redisData);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            Long rebuildMillis = redisData.getRebuildMillis();
+            out.writeInt(rebuildMillis == null ? 0 : (int) Math.min(rebuildMillis, Integer.MAX_VALUE));
+            out.writeInt(schema.hash);
+            schema.write(redisData.getData(), out);
+        } catch (IOException | IllegalAccessException e) {
+            throw new IllegalStateException("failed to encode cache value", e);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public long readExpireTime(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).getLong(2);
+    }
+
+    @Override
+    public long readRebuildMillis(byte[] bytes) {
+        return bytes[1] == 1 ? 0 : ByteBuffer.wrap(bytes).getInt(V1_HEADER_LENGTH);
+    }
+
+    @Override
+    public RedisData decode(byte[] bytes, Class<?> type) {
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(readExpireTime(bytes)), ZoneId.systemDefault()));
+        redisData.setRebuildMillis(readRebuildMillis(bytes));
+        boolean v1 = bytes[1] == 1;
+        Schema schema = schemaOf(type);
+        if (schema == null) {
+            return redisData;
+        }
+        int headerLength = v1 ? V1_HEADER_LENGTH : HEADER_LENGTH;
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes, headerLength, bytes.length - headerLength))) {
+            if (in.readInt() == schema.hash) {
+                redisData.setData(schema.read(in));
+            }
+            return redisData;
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new IllegalStateException("failed to decode cache value", e);
+        }
+    }
+
+    private static Schema schemaOf(Class<?> type) {
+        Schema schema = SCHEMAS.computeIfAbsent(type, Schema::of);
+        return schema == Schema.UNSUPPORTED ? null : schema;
+    }
+
+    private static final class Schema {
+
+        static final Schema UNSUPPORTED = new Schema(null, new Field[0]);
+
+        final Class<?> type;
+        final Field[] fields;
+        final int hash;
+
+        Schema(Class<?> type, Field[] fields) {
+            this.type = type;
+            this.fields = fields;
+            int h = 1;
+            for (Field field : fields) {
+                h = 31 * h + field.getName().hashCode();
+                h = 31 * h + field.getType().getName().hashCode();
+            }
+            this.hash = h;
+        }
+
+        static Schema of(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    if (!SUPPORTED_TYPES.contains(field.getType())) {
+                        return UNSUPPORTED;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            try {
+                type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                return UNSUPPORTED;
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+            return new Schema(type, fields.toArray(new Field[0]));
+        }
+
+        void write(Object bean, DataOutputStream out) throws IOException, IllegalAccessException {
+            Object[] values = new Object[fields.length];
+            byte[] nulls = new byte[(fields.length + 7) / 8];
+            for (int i = 0; i < fields.length; i++) {
+                values[i] = fields[i].get(bean);
+                if (values[i] == null) {
+                    nulls[i >> 3] |= 1 << (i & 7);
+                }
+            }
+            out.write(nulls);
+            for (Object value : values) {
+                if (value == null) {
+                    continue;
+                }
+                if (value instanceof Long) {
+                    out.writeLong((Long) value);
+                } else if (value instanceof Integer) {
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Double) {
+                    out.writeDouble((Double) value);
+                } else if (value instanceof Boolean) {
+                    out.writeBoolean((Boolean) value);
+                } else if (value instanceof LocalDateTime) {
+                    LocalDateTime time = (LocalDateTime) value;
+                    out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+                    out.writeInt(time.getNano());
+                } else {
+                    byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(utf8.length);
+                    out.write(utf8);
+                }
+            }
+        }
+
+        Object read(DataInputStream in) throws IOException, ReflectiveOperationException {
+            Object bean = type.getDeclaredConstructor().newInstance();
+            byte[] nulls = new byte[(fields.length + 7) / 8];
+            in.readFully(nulls);
+            for (int i = 0; i < fields.length; i++) {
+                if ((nulls[i >> 3] & (1 << (i & 7))) != 0) {
+                    continue;
+                }
+                Field field = fields[i];
+                Class<?> fieldType = field.getType();
+                Object value;
+                if (fieldType == Long.class || fieldType == long.class) {
+                    value = in.readLong();
+                } else if (fieldType == Integer.class || fieldType == int.class) {
+                    value = in.readInt();
+                } else if (fieldType == Double.class || fieldType == double.class) {
+                    value = in.readDouble();
+                } else if (fieldType == Boolean.class || fieldType == boolean.class) {
+                    value = in.readBoolean();
+                } else if (fieldType == LocalDateTime.class) {
+                    value = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                } else {
+                    byte[] utf8 = new byte[in.readInt()];
+                    in.readFully(utf8);
+                    value = new String(utf8, StandardCharsets.UTF_8);
+                }
+                field.set(bean, value);
+            }
+            return bean;
+        }
+    }
+}
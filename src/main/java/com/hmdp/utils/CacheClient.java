@@ -0,0 +1,426 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * Typed redis cache helper shared by the read paths.
+ * Values are stored as JSON strings, logical-expire values are wrapped in {@link RedisData}
+ * and written with the configured {@link CacheValueCodec}. Both codec formats are always readable,
+ * so the codec can be switched without flushing existing keys.
+ */
+@Slf4j
+@Component
+public class CacheClient {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.cache.codec:json}")
+    private String codecName;
+
+    // XFetch beta, > 1 refreshes earlier, < 1 later
+    @Value("${hmdp.cache.xfetch-beta:1.0}")
+    private double xfetchBeta;
+
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+
+    private final CacheValueCodec jsonCodec = new JsonCacheValueCodec();
+    private final CacheValueCodec binaryCodec = new BinaryCacheValueCodec(jsonCodec);
+    private CacheValueCodec codec;
+
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+
+    private final LongAdder earlyRefreshes = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        codec = "binary".equalsIgnoreCase(codecName) ? binaryCodec : jsonCodec;
+    }
+
+    public void set(String key, Object value, Long time, TimeUnit unit) {
+        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+    }
+
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        setWithLogicalExpire(key, value, time, unit, 0L);
+    }
+
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, long rebuildMillis) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawValue = encodeLogical(value, time, unit, rebuildMillis);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().set(rawKey, rawValue));
+    }
+
+    // write many plain entries in one pipeline, each ttl stretched by a random share of jitter (0-1)
+    // so a batch written at once does not expire at once
+    public <ID> void setBatch(String keyPrefix, Map<ID, ?> values, Long time, TimeUnit unit, double jitter) {
+        if (values.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((id, value) -> connection.stringCommands().setEx(
+                    (keyPrefix + id).getBytes(StandardCharsets.UTF_8), jitteredSeconds(time, unit, jitter),
+                    JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8)));
+            return null;
+        });
+    }
+
+    // write many logical-expire entries in one pipeline, with the rebuild estimate XFetch needs and jittered expiry
+    public <ID> void setWithLogicalExpireBatch(String keyPrefix, Map<ID, ?> values, Long time, TimeUnit unit,
+                                               long rebuildMillis, double jitter) {
+        if (values.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((id, value) -> connection.stringCommands().set(
+                    (keyPrefix + id).getBytes(StandardCharsets.UTF_8),
+                    encodeLogical(value, jitteredSeconds(time, unit, jitter), TimeUnit.SECONDS, rebuildMillis)));
+            return null;
+        });
+    }
+
+    private static long jitteredSeconds(Long time, TimeUnit unit, double jitter) {
+        long seconds = unit.toSeconds(time);
+        return seconds + (long) (seconds * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    private byte[] encodeLogical(Object value, Long time, TimeUnit unit, long rebuildMillis) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        redisData.setRebuildMillis(rebuildMillis);
+        return codec.encode(redisData);
+    }
+
+    // values written by either codec, detected by the binary header
+    private CacheValueCodec codecOf(byte[] bytes) {
+        return BinaryCacheValueCodec.isBinary(bytes) ? binaryCodec : jsonCodec;
+    }
+
+    private byte[] getRaw(String key) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(rawKey));
+    }
+
+    public <R, ID> R query(CacheStrategy strategy, String keyPrefix, ID id, Class<R> type,
+                           Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        switch (strategy) {
+            case MUTEX:
+                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
+            case SINGLE_FLIGHT:
+                return queryWithSingleFlight(keyPrefix, id, type, dbFallback, time, unit);
+            case LOGICAL_EXPIRE:
+                return queryWithLogicalExpire(keyPrefix, id, type, dbFallback, time, unit);
+            default:
+                return queryWithPassThrough(keyPrefix, id, type, dbFallback, time, unit);
+        }
+    }
+
+    // cache empty values to solve cache penetration
+    public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type,
+                                          Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isNotBlank(json)) {
+            return JSONUtil.toBean(json, type);
+        }
+        // hit the empty value
+        if (json != null) {
+            return null;
+        }
+
+        R r = dbFallback.apply(id);
+        if (r == null) {
+            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        set(key, r, time, unit);
+        return r;
+    }
+
+    // same as queryWithPassThrough, for values that are a whole list under one key
+    public <R> List<R> queryListWithPassThrough(String key, Class<R> type,
+                                                Supplier<List<R>> dbFallback, Long time, TimeUnit unit) {
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (json != null) {
+            return JSONUtil.toList(json, type);
+        }
+
+        List<R> list = dbFallback.get();
+        // an empty list is cached as "[]" with the short null ttl
+        if (list == null || list.isEmpty()) {
+            stringRedisTemplate.opsForValue().set(key, "[]", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return list;
+        }
+        set(key, list, time, unit);
+        return list;
+    }
+
+    // apply mutex lock to solve cache breakdown
+    public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> type,
+                                    Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        String lockKey = LOCK_KEY_PREFIX + key;
+        for (int attempt = 0; ; attempt++) {
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (StrUtil.isNotBlank(json)) {
+                return JSONUtil.toBean(json, type);
+            }
+            if (json != null) {
+                return null;
+            }
+
+            // if not lock, sleep and retry later
+            if (!tryLock(lockKey)) {
+                sleep(Math.min(10L << Math.min(attempt, 4), 100L));
+                continue;
+            }
+            try {
+                R r = dbFallback.apply(id);
+                if (r == null) {
+                    stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                    return null;
+                }
+                set(key, r, time, unit);
+                return r;
+            } finally {
+                unlock(lockKey);
+            }
+        }
+    }
+
+    // coalesce concurrent misses in this JVM, then rebuild under the redis mutex across nodes
+    @SuppressWarnings("unchecked")
+    public <R, ID> R queryWithSingleFlight(String keyPrefix, ID id, Class<R> type,
+                                           Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isNotBlank(json)) {
+            return JSONUtil.toBean(json, type);
+        }
+        if (json != null) {
+            return null;
+        }
+
+        // only the leader of this key polls redis, the other callers wait on its future
+        return (R) singleFlight.execute(key, () -> queryWithMutex(keyPrefix, id, type, dbFallback, time, unit));
+    }
+
+    // apply logical expire to solve cache breakdown
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type,
+                                            Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        byte[] bytes = getRaw(key);
+
+        // hit the empty value, the id does not exist
+        if (bytes != null && bytes.length == 0) {
+            return null;
+        }
+
+        // if hits, decode the expire time, rebuild duration and value in one pass
+        R r = null;
+        RedisData redisData = null;
+        if (bytes != null) {
+            redisData = codecOf(bytes).decode(bytes, type);
+            r = type.cast(redisData.getData());
+        }
+
+        // not cached yet (or written for another version of the class), load it and cache it
+        if (r == null) {
+            long start = System.currentTimeMillis();
+            r = dbFallback.apply(id);
+            if (r == null) {
+                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                return null;
+            }
+            setWithLogicalExpire(key, r, time, unit, System.currentTimeMillis() - start);
+            return r;
+        }
+
+        refreshIfNeeded(key, id, dbFallback, redisData, time, unit);
+        return r;
+    }
+
+    // MGET all keys at once, load the misses with one batch query and write them back in one pipeline
+    public <R, ID> Map<ID, R> queryBatchWithLogicalExpire(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                                          Function<Collection<ID>, List<R>> dbFallback,
+                                                          Function<R, ID> idMapper, Long time, TimeUnit unit) {
+        Map<ID, R> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        List<ID> idList = new ArrayList<>(ids);
+        byte[][] rawKeys = new byte[idList.size()][];
+        for (int i = 0; i < idList.size(); i++) {
+            rawKeys[i] = (keyPrefix + idList.get(i)).getBytes(StandardCharsets.UTF_8);
+        }
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(rawKeys));
+
+        // expired entries are rebuilt one by one in background, like the single key path
+        Function<ID, R> singleFallback = id -> {
+            List<R> list = dbFallback.apply(Collections.singletonList(id));
+            return list == null || list.isEmpty() ? null : list.get(0);
+        };
+        List<ID> misses = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i++) {
+            ID id = idList.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes == null) {
+                misses.add(id);
+                continue;
+            }
+            // the empty value, the id does not exist
+            if (bytes.length == 0) {
+                continue;
+            }
+            RedisData redisData = codecOf(bytes).decode(bytes, type);
+            R r = type.cast(redisData.getData());
+            if (r == null) {
+                misses.add(id);
+                continue;
+            }
+            result.put(id, r);
+            refreshIfNeeded(keyPrefix + id, id, singleFallback, redisData, time, unit);
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        long start = System.currentTimeMillis();
+        List<R> loaded = dbFallback.apply(misses);
+        long rebuildMillis = System.currentTimeMillis() - start;
+        Map<ID, R> loadedById = new HashMap<>();
+        if (loaded != null) {
+            for (R r : loaded) {
+                loadedById.put(idMapper.apply(r), r);
+            }
+        }
+        byte[] empty = new byte[0];
+        long nullSeconds = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : misses) {
+                byte[] rawKey = (keyPrefix + id).getBytes(StandardCharsets.UTF_8);
+                R r = loadedById.get(id);
+                if (r == null) {
+                    connection.stringCommands().setEx(rawKey, nullSeconds, empty);
+                } else {
+                    connection.stringCommands().set(rawKey, encodeLogical(r, time, unit, rebuildMillis));
+                }
+            }
+            return null;
+        });
+        result.putAll(loadedById);
+        return result;
+    }
+
+    private <R, ID> void refreshIfNeeded(String key, ID id, Function<ID, R> dbFallback,
+                                         RedisData redisData, Long time, TimeUnit unit) {
+        cacheRebuildScheduler.recordAccess(key);
+        long now = System.currentTimeMillis();
+        long expireTime = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long rebuildMillis = redisData.getRebuildMillis() == null ? 0 : redisData.getRebuildMillis();
+        if (expireTime > now) {
+            // XFetch: refresh early with a probability that rises as expiry approaches,
+            // scaled by how long the last rebuild took. -ln(rand) is exponentially distributed
+            double gap = -rebuildMillis * xfetchBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+            if (rebuildMillis > 0 && now + gap >= expireTime) {
+                // no redis lock here: few readers win the draw, and the scheduler dedupes per node
+                if (cacheRebuildScheduler.submit(key, () -> rebuild(key, id, dbFallback, time, unit))) {
+                    earlyRefreshes.increment();
+                }
+            }
+            return;
+        }
+
+        // if expired, rebuild in background while callers keep the stale value.
+        // the scheduler dedupes per node, the redis lock dedupes across nodes
+        cacheRebuildScheduler.submit(key, () -> {
+            String lockKey = LOCK_KEY_PREFIX + key;
+            if (!tryLock(lockKey)) {
+                return;
+            }
+            try {
+                // another node may have rebuilt it while this task was queued
+                if (!expiredInRedis(key)) {
+                    return;
+                }
+                rebuild(key, id, dbFallback, time, unit);
+            } finally {
+                unlock(lockKey);
+            }
+        });
+    }
+
+    // only the expire time is read, binary values are not decoded past their header
+    private boolean expiredInRedis(String key) {
+        byte[] bytes = getRaw(key);
+        if (bytes == null || bytes.length == 0) {
+            return true;
+        }
+        return codecOf(bytes).readExpireTime(bytes) <= System.currentTimeMillis();
+    }
+
+    private <R, ID> void rebuild(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long start = System.currentTimeMillis();
+        R fresh = dbFallback.apply(id);
+        if (fresh == null) {
+            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+        } else {
+            setWithLogicalExpire(key, fresh, time, unit, System.currentTimeMillis() - start);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("codec", codecName);
+        stats.put("singleFlightLoads", singleFlight.getExecutions());
+        stats.put("singleFlightShared", singleFlight.getShared());
+        stats.put("singleFlightInFlight", singleFlight.getInFlight());
+        stats.put("xfetchBeta", xfetchBeta);
+        stats.put("earlyRefreshes", earlyRefreshes.sum());
+        return stats;
+    }
+
+    private boolean tryLock(String key) {
+        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", LOCK_SHOP_TTL, TimeUnit.SECONDS);
+        return BooleanUtil.isTrue(flag);
+    }
+
+    private void unlock(String key) {
+        stringRedisTemplate.delete(key);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs background cache rebuilds.
+ * <ul>
+ *     <li>the queue is bounded, rebuilds beyond it are dropped (readers keep serving stale data)</li>
+ *     <li>a key that is already queued or running is not submitted again</li>
+ *     <li>keys read more often in the current window are rebuilt first</li>
+ *     <li>at most {@code concurrency} rebuilds hit MySQL at the same time</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class CacheRebuildScheduler {
+
+    private static final int MAX_TRACKED_KEYS = 10000;
+
+    @Value("${hmdp.cache.rebuild.concurrency:4}")
+    private int concurrency;
+
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    // keys queued or running
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // reads per key in the current window, used as rebuild priority
+    private final ConcurrentHashMap<String, LongAdder> hotness = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final LongAccumulator maxLatencyMillis = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalWaitMillis = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), new NamedThreadFactory("cache-rebuild-", true));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    public void recordAccess(String key) {
+        LongAdder counter = hotness.get(key);
+        if (counter == null) {
+            if (hotness.size() >= MAX_TRACKED_KEYS) {
+                return;
+            }
+            counter = hotness.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * @return false if the key is already pending or the queue is full
+     */
+    public boolean submit(String key, Runnable rebuild) {
+        if (!pending.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        if (executor.getQueue().size() >= queueCapacity) {
+            pending.remove(key);
+            dropped.increment();
+            return false;
+        }
+        LongAdder counter = hotness.get(key);
+        long priority = counter == null ? 0 : counter.sum();
+        submitted.increment();
+        executor.execute(new RebuildTask(key, priority, sequence.incrementAndGet(), rebuild));
+        return true;
+    }
+
+    // start a new hotness window
+    @Scheduled(fixedRateString = "${hmdp.cache.rebuild.hotness-window-ms:60000}")
+    public void resetHotness() {
+        hotness.clear();
+    }
+
+    public Map<String, Object> stats() {
+        long completedCount = completed.sum();
+        long finished = completedCount + failed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("concurrency", concurrency);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("running", executor.getActiveCount());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("completed", completedCount);
+        stats.put("failed", failed.sum());
+        stats.put("avgLatencyMillis", finished == 0 ? 0D : (double) totalLatencyMillis.sum() / finished);
+        stats.put("maxLatencyMillis", maxLatencyMillis.get());
+        stats.put("avgQueueWaitMillis", finished == 0 ? 0D : (double) totalWaitMillis.sum() / finished);
+        return stats;
+    }
+
+    private class RebuildTask implements Runnable, Comparable<RebuildTask> {
+
+        private final String key;
+        private final long priority;
+        private final long seq;
+        private final Runnable rebuild;
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        RebuildTask(String key, long priority, long seq, Runnable rebuild) {
+            this.key = key;
+            this.priority = priority;
+            this.seq = seq;
+            this.rebuild = rebuild;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            totalWaitMillis.add(start - enqueuedAt);
+            try {
+                rebuild.run();
+                completed.increment();
+            } catch (Exception e) {
+                failed.increment();
+                log.error("cache rebuild failed, key: {}", key, e);
+            } finally {
+                long latency = System.currentTimeMillis() - start;
+                totalLatencyMillis.add(latency);
+                maxLatencyMillis.accumulate(latency);
+                pending.remove(key);
+            }
+        }
+
+        // hotter keys first, then fifo
+        @Override
+        public int compareTo(RebuildTask other) {
+            int byPriority = Long.compare(other.priority, priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
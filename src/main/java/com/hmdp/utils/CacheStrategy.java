@@ -0,0 +1,20 @@
+package com.hmdp.utils;
+
+/**
+ * Stampede / penetration protection applied by {@link CacheClient#query}.
+ */
+public enum CacheStrategy {
+
+    // cache empty values for unknown ids, no breakdown protection
+    PASS_THROUGH,
+
+    // cache empty values, rebuild under a redis mutex while other readers wait
+    MUTEX,
+
+    // like MUTEX, but concurrent misses in this JVM share one in-flight load,
+    // so only that one thread competes for the redis mutex
+    SINGLE_FLIGHT,
+
+    // never expire in redis, serve stale data while one thread rebuilds in background
+    LOGICAL_EXPIRE
+}
@@ -0,0 +1,26 @@
+package com.hmdp.utils;
+
+/**
+ * Serializes {@link RedisData} cache values to the bytes stored in redis.
+ */
+public interface CacheValueCodec {
+
+    byte[] encode(RedisData redisData);
+
+    /**
+     * @return logical expire time in epoch millis, read without decoding the payload where possible
+     */
+    long readExpireTime(byte[] bytes);
+
+    /**
+     * @return duration of the rebuild that produced this value in millis, 0 if unknown
+     */
+    long readRebuildMillis(byte[] bytes);
+
+    /**
+     * Read the expire time, the rebuild duration and the value in one pass.
+     * @return the stored {@link RedisData} with its data converted to {@code type},
+     * data is null if the stored payload no longer matches {@code type}
+     */
+    RedisData decode(byte[] bytes, Class<?> type);
+}
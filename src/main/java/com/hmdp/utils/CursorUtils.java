@@ -0,0 +1,40 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.StrUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Opaque page cursors: the sort key of the last returned row, url-safe base64 encoded.
+ */
+public class CursorUtils {
+
+    private static final String SEPARATOR = ",";
+
+    public static String encode(Object... parts) {
+        return Base64.encodeUrlSafe(StrUtil.join(SEPARATOR, parts));
+    }
+
+    /**
+     * @return the parts of the cursor, or null if it is blank or malformed
+     */
+    public static long[] decode(String cursor, int parts) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String[] values = Base64.decodeStr(cursor, StandardCharsets.UTF_8).split(SEPARATOR);
+            if (values.length != parts) {
+                return null;
+            }
+            long[] decoded = new long[parts];
+            for (int i = 0; i < parts; i++) {
+                decoded[i] = Long.parseLong(values[i]);
+            }
+            return decoded;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.hmdp.utils;
+
+/**
+ * Geohash encoding, used to quantize coordinates into cells.
+ * A precision of 6 is a cell of about 1.2km x 0.6km, 7 is about 153m x 153m.
+ */
+public class GeoHashUtils {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] BASE32_INDEX = new int[128];
+
+    static {
+        for (int i = 0; i < BASE32.length; i++) {
+            BASE32_INDEX[BASE32[i]] = i;
+        }
+    }
+
+    private GeoHashUtils() {
+    }
+
+    /**
+     * @param x longitude
+     * @param y latitude
+     * @param precision number of base32 characters, 1 to 12
+     */
+    public static String encode(double x, double y, int precision) {
+        double minX = -180, maxX = 180;
+        double minY = -90, maxY = 90;
+        StringBuilder hash = new StringBuilder(precision);
+        // bits alternate longitude, latitude, starting with longitude
+        boolean even = true;
+        int bit = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            if (even) {
+                double mid = (minX + maxX) / 2;
+                if (x >= mid) {
+                    ch = (ch << 1) | 1;
+                    minX = mid;
+                } else {
+                    ch <<= 1;
+                    maxX = mid;
+                }
+            } else {
+                double mid = (minY + maxY) / 2;
+                if (y >= mid) {
+                    ch = (ch << 1) | 1;
+                    minY = mid;
+                } else {
+                    ch <<= 1;
+                    maxY = mid;
+                }
+            }
+            even = !even;
+            if (++bit == 5) {
+                hash.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * @return width and height of a cell in degrees, as {longitude, latitude}
+     */
+    public static double[] cellSize(int precision) {
+        // 5 bits per char, alternating from longitude, which gets the odd one
+        int lonBits = (5 * precision + 1) / 2;
+        int latBits = 5 * precision / 2;
+        return new double[]{360 / Math.pow(2, lonBits), 180 / Math.pow(2, latBits)};
+    }
+
+    /**
+     * @return the center of the cell as {longitude, latitude}
+     */
+    public static double[] decode(String hash) {
+        double minX = -180, maxX = 180;
+        double minY = -90, maxY = 90;
+        boolean even = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int ch = BASE32_INDEX[hash.charAt(i)];
+            for (int mask = 16; mask > 0; mask >>= 1) {
+                if (even) {
+                    double mid = (minX + maxX) / 2;
+                    if ((ch & mask) != 0) {
+                        minX = mid;
+                    } else {
+                        maxX = mid;
+                    }
+                } else {
+                    double mid = (minY + maxY) / 2;
+                    if ((ch & mask) != 0) {
+                        minY = mid;
+                    } else {
+                        maxY = mid;
+                    }
+                }
+                even = !even;
+            }
+        }
+        return new double[]{(minX + maxX) / 2, (minY + maxY) / 2};
+    }
+}
@@ -0,0 +1,43 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+
+/**
+ * The original format: the whole {@link RedisData} as a hutool JSON string.
+ */
+public class JsonCacheValueCodec implements CacheValueCodec {
+
+    @Override
+    public byte[] encode(RedisData redisData) {
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // there is no header, both reads parse the whole string, hot paths use decode
+    @Override
+    public long readExpireTime(byte[] bytes) {
+        return parse(bytes).getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Override
+    public long readRebuildMillis(byte[] bytes) {
+        Long rebuildMillis = parse(bytes).getRebuildMillis();
+        return rebuildMillis == null ? 0 : rebuildMillis;
+    }
+
+    @Override
+    public RedisData decode(byte[] bytes, Class<?> type) {
+        // the string is parsed once, data is converted from the parsed JSONObject
+        RedisData redisData = parse(bytes);
+        Object data = redisData.getData();
+        redisData.setData(data instanceof JSONObject ? JSONUtil.toBean((JSONObject) data, type) : null);
+        return redisData;
+    }
+
+    private RedisData parse(byte[] bytes) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+    }
+}
@@ -9,18 +9,51 @@ public class RedisConstants {
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
+    public static final Long CACHE_SHOP_LOGICAL_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_SHOP_INVALIDATE_CHANNEL = "cache:shop:invalidate";
 
     public static final String CACHE_SHOPTYPE_KEY = "cache:shoptype";
     public static final Long CACHE_SHOPTYPE_TTL = 30L;
+    public static final String CACHE_SHOPTYPE_VERSION_KEY = "cache:shoptype:version";
+    public static final String CACHE_SHOPTYPE_CHANGE_CHANNEL = "cache:shoptype:change";
 
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final Long CACHE_BLOG_TTL = 30L;
+
+    public static final String CACHE_VOUCHER_KEY = "cache:voucher:shop:";
+    public static final Long CACHE_VOUCHER_TTL = 1L;
+
+    public static final String LOCK_KEY_PREFIX = "lock:";
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_STOCK_SHARDS_KEY = "seckill:stock-shards:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SOLD_OUT_KEY = "seckill:sold-out:";
+    public static final Long SECKILL_SOLD_OUT_TTL = 10L;
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_ORDER_DLQ_STREAM = "stream.orders.dlq";
+    // one hash tag for every bucket, seckill_limit.lua touches several of them in one call
+    public static final String SECKILL_LIMIT_KEY = "limit:{seckill}:";
+    public static final String SECKILL_LIMIT_VOUCHER_RATE_KEY = "limit:seckill:voucher-rate";
+    public static final String ID_WORKER_KEY = "id:worker:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FOLLOW_KEY = "follows:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final double SHOP_GEO_RADIUS = 5000;
+    public static final String CACHE_SHOP_GEO_CELL_KEY = "cache:geo-cell:shop:";
+    public static final Long CACHE_SHOP_GEO_CELL_TTL = 30L;
+    public static final String SHOP_GEO_SESSION_KEY = "shop:geo-session:";
+    public static final Long SHOP_GEO_SESSION_TTL = 60L;
+    public static final long SHOP_GEO_SESSION_LIMIT = 500;
+    public static final String BLOOM_SHOP_KEY = "bloom:shop";
+    public static final String BLOOM_SHOP_ADD_CHANNEL = "bloom:shop:add";
+    public static final String SHOP_CHANGE_CHANNEL = "shop:change";
     public static final String USER_SIGN_KEY = "sign:";
 }
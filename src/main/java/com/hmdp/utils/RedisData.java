@@ -7,5 +7,7 @@ import java.time.LocalDateTime;
 @Data
 public class RedisData {
     private LocalDateTime expireTime;
+    // how long the last rebuild took, drives the early refresh probability
+    private Long rebuildMillis;
     private Object data;
 }
@@ -1,34 +1,194 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
+/**
+ * Ids of 32 bits of seconds since {@code TIME_STAMP} and 32 bits of a daily sequence from redis.
+ * <ul>
+ *     <li>incr: one INCR per id</li>
+ *     <li>segment: one INCRBY leases {@code segment-size} sequence numbers, handed out locally;
+ *     the next segment is fetched in the background once {@code prefetch-ratio} of the current one is used</li>
+ *     <li>snowflake: no redis call per id, see {@link SnowflakeIdWorker}</li>
+ * </ul>
+ */
+@Slf4j
 @Component
 public class RedisIdWorker {
 
-    private static final Long TIME_STAMP= 1735689600L;
+    static final long TIME_STAMP = 1735689600L;
     private static final int COUNT_BITS = 32;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    // TimeZone.getDefault() returns a copy, look it up once
+    private static final TimeZone ZONE = TimeZone.getDefault();
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SnowflakeIdWorker snowflakeIdWorker;
+
+    @Value("${hmdp.id.mode:incr}")
+    private String mode = "incr";
+
+    @Value("${hmdp.id.segment-size:1000}")
+    private int segmentSize = 1000;
+
+    @Value("${hmdp.id.prefetch-ratio:0.8}")
+    private double prefetchRatio = 0.8;
+
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService prefetchExecutor =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("id-segment-prefetch-", true));
+    // the wall clock, replaced in tests
+    private LongSupplier clock = System::currentTimeMillis;
+    // the yyyyMMdd of the current day, formatted once per day
+    private volatile CachedDate cachedDate = new CachedDate(Long.MIN_VALUE, null);
+
+    @PreDestroy
+    private void destroy() {
+        prefetchExecutor.shutdownNow();
+    }
+
     public Long nextId(String keyPrefix) {
-        // generate time stamp
-        LocalDateTime now = LocalDateTime.now();
-        Long nowEpochSecond = now.toEpochSecond(ZoneOffset.UTC);
-        Long timeStamp = nowEpochSecond - TIME_STAMP;
+        if (snowflakeIdWorker != null && snowflakeIdWorker.enabled()) {
+            return snowflakeIdWorker.nextId();
+        }
+        // generate time stamp, seconds of the local wall clock like LocalDateTime.now().toEpochSecond(UTC)
+        long nowMillis = clock.getAsLong();
+        long localMillis = nowMillis + ZONE.getOffset(nowMillis);
+        long timeStamp = Math.floorDiv(localMillis, 1000L) - TIME_STAMP;
 
         // generate sequence number
-        String date = now.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + date);
+        long day = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        long count = "segment".equalsIgnoreCase(mode)
+                ? nextSegmentCount(keyPrefix, day)
+                : stringRedisTemplate.opsForValue().increment(counterKey(keyPrefix, day));
 
         // concentrate
         return timeStamp << COUNT_BITS | count;
     }
+
+    private String counterKey(String keyPrefix, long day) {
+        CachedDate date = cachedDate;
+        if (date.day != day) {
+            date = new CachedDate(day, LocalDate.ofEpochDay(day).format(DATE_FORMATTER));
+            cachedDate = date;
+        }
+        return "icr:" + keyPrefix + date.text;
+    }
+
+    private long nextSegmentCount(String keyPrefix, long day) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new);
+        while (true) {
+            Segment segment = buffer.current;
+            // a segment of yesterday's counter must not be combined with today's timestamps
+            if (segment != null && segment.day == day) {
+                long count = segment.cursor.getAndIncrement();
+                if (count <= segment.end) {
+                    if (count - segment.start >= segment.prefetchAt) {
+                        buffer.prefetch(day);
+                    }
+                    return count;
+                }
+            }
+            buffer.next(segment, day);
+        }
+    }
+
+    private Segment lease(String keyPrefix, long day) {
+        Long end = stringRedisTemplate.opsForValue().increment(counterKey(keyPrefix, day), segmentSize);
+        if (end == null) {
+            throw new IllegalStateException("failed to lease an id segment for " + keyPrefix);
+        }
+        return new Segment(day, end - segmentSize + 1, end, (long) (segmentSize * prefetchRatio));
+    }
+
+    private final class SegmentBuffer {
+
+        private final String keyPrefix;
+        private final AtomicBoolean prefetching = new AtomicBoolean();
+        private volatile Segment current;
+        private volatile Future<Segment> prefetched;
+
+        SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        void prefetch(long day) {
+            if (prefetched != null || !prefetching.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                prefetched = prefetchExecutor.submit(() -> lease(keyPrefix, day));
+            } catch (RejectedExecutionException e) {
+                prefetching.set(false);
+            }
+        }
+
+        // switch to the next segment, unless another thread already did
+        synchronized void next(Segment exhausted, long day) {
+            if (current != exhausted) {
+                return;
+            }
+            Segment next = null;
+            Future<Segment> future = prefetched;
+            if (future != null) {
+                try {
+                    next = future.get();
+                } catch (Exception e) {
+                    log.warn("failed to prefetch an id segment for {}", keyPrefix, e);
+                }
+                prefetched = null;
+                prefetching.set(false);
+            }
+            if (next == null || next.day != day) {
+                next = lease(keyPrefix, day);
+            }
+            current = next;
+        }
+    }
+
+    private static final class Segment {
+
+        final long day;
+        final long start;
+        final long end;
+        final long prefetchAt;
+        final AtomicLong cursor;
+
+        Segment(long day, long start, long end, long prefetchAt) {
+            this.day = day;
+            this.start = start;
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    private static final class CachedDate {
+
+        final long day;
+        final String text;
+
+        CachedDate(long day, String text) {
+            this.day = day;
+            this.text = text;
+        }
+    }
 }
@@ -0,0 +1,430 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DLQ_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+
+/**
+ * Persists seckill orders from stream.orders.
+ * A pool of consumers in group g1 reads batches with XREADGROUP and acknowledges each batch with one XACK.
+ * Consumer names are stable per node (host, port, index). A record that fails stays pending, is retried
+ * with exponential backoff through XCLAIM, and ends up in stream.orders.dlq after too many deliveries.
+ * Acknowledged records are trimmed with XTRIM MINID.
+ */
+@Slf4j
+@Component
+public class SeckillOrderConsumer {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private VoucherOrderBatchWriter voucherOrderBatchWriter;
+
+    @Value("${hmdp.seckill.stream.consumers:2}")
+    private int consumers;
+
+    @Value("${hmdp.seckill.stream.batch-size:50}")
+    private int batchSize;
+
+    @Value("${hmdp.seckill.stream.block-ms:2000}")
+    private long blockMillis;
+
+    @Value("${hmdp.seckill.stream.max-deliveries:5}")
+    private long maxDeliveries;
+
+    @Value("${hmdp.seckill.stream.retry-backoff-ms:10000}")
+    private long retryBackoffMillis;
+
+    @Value("${hmdp.seckill.stream.max-retry-backoff-ms:300000}")
+    private long maxRetryBackoffMillis;
+
+    // a pending record is only claimed by another consumer after this long, keep it above the slowest batch
+    @Value("${hmdp.seckill.stream.claim-min-idle-ms:30000}")
+    private long claimMinIdleMillis;
+
+    @Value("${hmdp.seckill.stream.recovery-interval-ms:1000}")
+    private long recoveryIntervalMillis;
+
+    @Value("${server.port:8081}")
+    private int serverPort;
+
+    private ExecutorService executor;
+    private volatile boolean running = true;
+
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder trimmed = new LongAdder();
+    // for the throughput between two stats calls
+    private long lastStatsMillis = System.currentTimeMillis();
+    private long lastStatsAcked;
+
+    @PostConstruct
+    private void init() {
+        createGroup();
+        executor = new ThreadPoolExecutor(consumers, consumers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("seckill-order-", true));
+        String prefix = NetUtil.getLocalHostName() + "-" + serverPort + "-";
+        for (int i = 0; i < consumers; i++) {
+            executor.submit(new VoucherOrderHandler(prefix + i));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    // XGROUP CREATE ... MKSTREAM, an existing group is fine
+    private void createGroup() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    SECKILL_ORDER_STREAM.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")
+                    && !(e.getCause() != null && String.valueOf(e.getCause().getMessage()).contains("BUSYGROUP"))) {
+                log.error("failed to create consumer group {} on {}", SECKILL_ORDER_GROUP, SECKILL_ORDER_STREAM, e);
+            }
+        }
+    }
+
+    private class VoucherOrderHandler implements Runnable {
+
+        private final Consumer consumer;
+        private long nextRecoveryMillis;
+
+        VoucherOrderHandler(String name) {
+            this.consumer = Consumer.from(SECKILL_ORDER_GROUP, name);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    // failed records are retried on their own schedule, never in a tight loop
+                    if (System.currentTimeMillis() >= nextRecoveryMillis) {
+                        nextRecoveryMillis = System.currentTimeMillis() + recoveryIntervalMillis;
+                        recoverPending(consumer);
+                    }
+                    // get a batch from message queue
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis)),
+                            StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.lastConsumed())
+                    );
+                    if (list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    handleBatch(list);
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("handling order error", e);
+                    sleep(blockMillis);
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk the pending list of the whole group, so records of a consumer that is gone are picked up too.
+     * A record is due once it has been idle for its backoff, {@code retry-backoff-ms * 2^(deliveries - 1)}
+     * but never less than {@code claim-min-idle-ms}. The list is paged until a batch of due records is found,
+     * so records still in backoff at its head do not hide due ones behind them. Due records are claimed first,
+     * then retried, or moved to the dead-letter stream after {@code max-deliveries}; a record still in its last
+     * attempt is never idle enough.
+     */
+    private void recoverPending(Consumer consumer) {
+        Map<RecordId, PendingMessage> due = new LinkedHashMap<>();
+        String from = "0-0";
+        while (due.size() < batchSize) {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(SECKILL_ORDER_STREAM,
+                    SECKILL_ORDER_GROUP, Range.rightUnbounded(Range.Bound.inclusive(from)), batchSize);
+            if (pending == null || pending.isEmpty()) {
+                break;
+            }
+            for (PendingMessage message : pending) {
+                if (due.size() < batchSize && message.getElapsedTimeSinceLastDelivery().toMillis()
+                        >= backoffMillis(message.getTotalDeliveryCount())) {
+                    due.put(message.getId(), message);
+                }
+            }
+            if (pending.size() < batchSize) {
+                break;
+            }
+            // the next page starts right after the last entry, exclusive ranges need redis 6.2
+            RecordId last = pending.get(pending.size() - 1).getId();
+            from = RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue();
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        List<MapRecord<String, Object, Object>> claimed = claim(consumer, due.keySet());
+        if (claimed.isEmpty()) {
+            return;
+        }
+        List<MapRecord<String, Object, Object>> retry = new ArrayList<>(claimed.size());
+        for (MapRecord<String, Object, Object> record : claimed) {
+            PendingMessage message = due.get(record.getId());
+            if (message != null && message.getTotalDeliveryCount() >= maxDeliveries) {
+                deadLetter(message, record);
+            } else {
+                retry.add(record);
+            }
+        }
+        if (!retry.isEmpty()) {
+            retried.add(retry.size());
+            recovered.add(handleBatch(retry));
+        }
+    }
+
+    /**
+     * XCLAIM resets the idle time, so of several consumers only one gets each record. The min idle sits
+     * well above the slowest batch, a record whose owner is still working on it is left alone.
+     */
+    private List<MapRecord<String, Object, Object>> claim(Consumer consumer, Collection<RecordId> ids) {
+        List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(bytes(SECKILL_ORDER_STREAM), SECKILL_ORDER_GROUP, consumer.getName(),
+                        XClaimOptions.minIdle(Duration.ofMillis(claimMinIdleMillis)).ids(ids.toArray(new RecordId[0]))));
+        List<MapRecord<String, Object, Object>> claimed = new ArrayList<>();
+        if (records == null) {
+            return claimed;
+        }
+        // same shape as the records XREADGROUP returns through the string template
+        for (ByteRecord record : records) {
+            Map<Object, Object> value = new LinkedHashMap<>();
+            record.getValue().forEach((k, v) -> value.put(
+                    new String(k, StandardCharsets.UTF_8), new String(v, StandardCharsets.UTF_8)));
+            claimed.add(MapRecord.create(SECKILL_ORDER_STREAM, value).withId(record.getId()));
+        }
+        return claimed;
+    }
+
+    private long backoffMillis(long deliveries) {
+        long backoff = Math.min(retryBackoffMillis << Math.min(Math.max(deliveries - 1, 0), 20), maxRetryBackoffMillis);
+        return Math.max(backoff, claimMinIdleMillis);
+    }
+
+    // copy to stream.orders.dlq with its delivery history, then ack it on the main stream
+    private void deadLetter(PendingMessage message, MapRecord<String, Object, Object> record) {
+        RecordId id = message.getId();
+        Map<String, String> body = new LinkedHashMap<>();
+        record.getValue().forEach((k, v) -> body.put(k.toString(), v.toString()));
+        body.put("sourceId", id.getValue());
+        body.put("deliveries", String.valueOf(message.getTotalDeliveryCount()));
+        body.put("lastConsumer", message.getConsumerName());
+        body.put("deadAt", String.valueOf(System.currentTimeMillis()));
+        stringRedisTemplate.opsForStream().add(MapRecord.create(SECKILL_ORDER_DLQ_STREAM, body));
+        stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, id);
+        deadLettered.increment();
+        log.error("order record {} moved to {} after {} deliveries",
+                id, SECKILL_ORDER_DLQ_STREAM, message.getTotalDeliveryCount());
+    }
+
+    /**
+     * @return the oldest {@code count} dead letters, each with its id
+     */
+    public List<Map<String, Object>> deadLetters(int count) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(
+                SECKILL_ORDER_DLQ_STREAM, Range.unbounded(), RedisZSetCommands.Limit.limit().count(count));
+        List<Map<String, Object>> letters = new ArrayList<>();
+        if (records == null) {
+            return letters;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<String, Object> letter = new LinkedHashMap<>();
+            letter.put("id", record.getId().getValue());
+            record.getValue().forEach((k, v) -> letter.put(k.toString(), v));
+            letters.add(letter);
+        }
+        return letters;
+    }
+
+    /**
+     * Put dead letters back on stream.orders as new records and delete them from the dead-letter stream.
+     * @return the number of records replayed
+     */
+    public int replayDeadLetters(List<String> ids) {
+        int replayed = 0;
+        for (String id : ids) {
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .range(SECKILL_ORDER_DLQ_STREAM, Range.closed(id, id));
+            if (records == null || records.isEmpty()) {
+                continue;
+            }
+            Map<Object, Object> value = records.get(0).getValue();
+            if (value.get("id") == null) {
+                log.warn("dead letter {} has no order body, skipped", id);
+                continue;
+            }
+            Map<String, String> order = new HashMap<>();
+            order.put("userId", String.valueOf(value.get("userId")));
+            order.put("voucherId", String.valueOf(value.get("voucherId")));
+            order.put("id", String.valueOf(value.get("id")));
+            stringRedisTemplate.opsForStream().add(MapRecord.create(SECKILL_ORDER_STREAM, order));
+            stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_DLQ_STREAM, id);
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /**
+     * Drop acknowledged records: everything before the oldest pending one, or before the last delivered one
+     * when nothing is pending. Undelivered records are never trimmed.
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.stream.trim-interval-ms:60000}")
+    public void trim() {
+        try {
+            // XInfoGroups is not Iterable
+            String minId = stringRedisTemplate.opsForStream().groups(SECKILL_ORDER_STREAM).stream()
+                    .filter(group -> SECKILL_ORDER_GROUP.equals(group.groupName()))
+                    .map(StreamInfo.XInfoGroup::lastDeliveredId)
+                    .findFirst()
+                    .orElse(null);
+            PendingMessagesSummary pending = stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP);
+            if (pending != null && pending.getTotalPendingMessages() > 0) {
+                minId = pending.minMessageId();
+            }
+            if (minId == null || "0-0".equals(minId)) {
+                return;
+            }
+            String threshold = minId;
+            // XTRIM MINID needs redis 6.2
+            Object removed = stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute(
+                    "XTRIM", bytes(SECKILL_ORDER_STREAM), bytes("MINID"), bytes("~"), bytes(threshold)));
+            if (removed instanceof Long) {
+                trimmed.add((Long) removed);
+            }
+        } catch (Exception e) {
+            log.warn("failed to trim {}", SECKILL_ORDER_STREAM, e);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of records persisted and acknowledged
+     */
+    private int handleBatch(List<MapRecord<String, Object, Object>> list) {
+        batches.increment();
+        consumed.add(list.size());
+        List<RecordId> recordIds = new ArrayList<>(list.size());
+        List<VoucherOrder> voucherOrders = new ArrayList<>(list.size());
+        for (MapRecord<String, Object, Object> record : list) {
+            try {
+                voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+                recordIds.add(record.getId());
+            } catch (Exception e) {
+                failed.increment();
+                log.error("invalid order record: {}", record.getId(), e);
+            }
+        }
+        // the whole batch in one transaction, failed orders stay pending
+        Set<Long> failedIds = voucherOrderBatchWriter.write(voucherOrders);
+        List<RecordId> done = new ArrayList<>(list.size());
+        for (int i = 0; i < voucherOrders.size(); i++) {
+            if (failedIds.contains(voucherOrders.get(i).getId())) {
+                failed.increment();
+            } else {
+                done.add(recordIds.get(i));
+            }
+        }
+        // one XACK for the whole batch
+        if (!done.isEmpty()) {
+            stringRedisTemplate.opsForStream().acknowledge(
+                    SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, done.toArray(new RecordId[0]));
+            acked.add(done.size());
+        }
+        return done.size();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("consumers", consumers);
+        stats.put("batchSize", batchSize);
+        stats.put("consumed", consumed.sum());
+        stats.put("acked", acked.sum());
+        stats.put("failed", failed.sum());
+        stats.put("batches", batches.sum());
+        stats.put("recovered", recovered.sum());
+        stats.put("retried", retried.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("trimmed", trimmed.sum());
+        stats.put("writer", voucherOrderBatchWriter.stats());
+        long now = System.currentTimeMillis();
+        long ackedNow = acked.sum();
+        long elapsed = Math.max(now - lastStatsMillis, 1);
+        stats.put("ackedPerSecond", (ackedNow - lastStatsAcked) * 1000.0 / elapsed);
+        lastStatsMillis = now;
+        lastStatsAcked = ackedNow;
+        try {
+            PendingMessagesSummary pending = stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP);
+            stats.put("pending", pending == null ? 0 : pending.getTotalPendingMessages());
+            stats.put("streamLength", stringRedisTemplate.opsForStream().size(SECKILL_ORDER_STREAM));
+            stats.put("deadLetters", stringRedisTemplate.opsForStream().size(SECKILL_ORDER_DLQ_STREAM));
+            // lag: how far the group's last delivered entry is behind the newest one, by entry timestamp
+            String lastGenerated = stringRedisTemplate.opsForStream().info(SECKILL_ORDER_STREAM).lastGeneratedId();
+            // XInfoGroups is not Iterable
+            stringRedisTemplate.opsForStream().groups(SECKILL_ORDER_STREAM).forEach(group -> {
+                if (SECKILL_ORDER_GROUP.equals(group.groupName())) {
+                    stats.put("lastDeliveredId", group.lastDeliveredId());
+                    stats.put("lagMillis", lastGenerated.equals(group.lastDeliveredId())
+                            ? 0 : idMillis(lastGenerated) - idMillis(group.lastDeliveredId()));
+                }
+            });
+        } catch (Exception e) {
+            log.warn("failed to read stream metrics", e);
+        }
+        return stats;
+    }
+
+    private static long idMillis(String id) {
+        return RecordId.of(id).getTimestamp();
+    }
+}
@@ -0,0 +1,62 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Rejects seckill requests over the rate limit with 429 before they reach seckillorder.
+ * Vouchers this node knows are sold out skip the limiter, seckillorder turns them away without redis.
+ */
+public class SeckillRateLimitInterceptor implements HandlerInterceptor {
+
+    private static final byte[] TOO_MANY_REQUESTS = JSONUtil.toJsonStr(Result.fail("Too many requests, please retry later"))
+            .getBytes(StandardCharsets.UTF_8);
+
+    private SeckillRateLimiter seckillRateLimiter;
+
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    public SeckillRateLimitInterceptor(SeckillRateLimiter seckillRateLimiter, SeckillSoldOutRegistry seckillSoldOutRegistry) {
+        this.seckillRateLimiter = seckillRateLimiter;
+        this.seckillSoldOutRegistry = seckillSoldOutRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        Long voucherId = voucherId(request);
+        if (voucherId != null && seckillSoldOutRegistry.isSoldOut(voucherId)) {
+            return true;
+        }
+        UserDTO user = UserHolder.getUser();
+        long waitMillis = seckillRateLimiter.acquire(voucherId, user == null ? null : user.getId());
+        if (waitMillis == 0) {
+            return true;
+        }
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf((waitMillis + 999) / 1000));
+        response.setContentType("application/json;charset=UTF-8");
+        response.getOutputStream().write(TOO_MANY_REQUESTS);
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Long voucherId(HttpServletRequest request) {
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables == null || variables.get("id") == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(variables.get("id"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_LIMIT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_LIMIT_VOUCHER_RATE_KEY;
+
+/**
+ * Token buckets in front of the seckill script: one global, one per voucher and one per user.
+ * All buckets of a request are checked and taken in one seckill_limit.lua call, so a rejected request
+ * costs no tokens and never reaches the stock keys. The bucket keys share the {seckill} hash tag, so on
+ * Redis Cluster they live in one slot and the call cannot fail with CROSSSLOT; that node sees one call per
+ * request, which the global bucket needs anyway.
+ * A rate of 0 or less disables a bucket. The per-voucher rate can be overridden in
+ * limit:seckill:voucher-rate, field voucherId, value "rate:burst".
+ */
+@Slf4j
+@Component
+public class SeckillRateLimiter {
+
+    private static final DefaultRedisScript<List<Long>> LIMIT_SCRIPT;
+
+    static {
+        LIMIT_SCRIPT = new DefaultRedisScript<>();
+        LIMIT_SCRIPT.setLocation(new ClassPathResource("seckill_limit.lua"));
+        // lua number arrays come back as lists of Long
+        @SuppressWarnings("unchecked")
+        Class<List<Long>> resultType = (Class<List<Long>>) (Class<?>) List.class;
+        LIMIT_SCRIPT.setResultType(resultType);
+    }
+
+    private static final String[] SCOPES = {"global", "voucher", "user"};
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.rate-limit.seckill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.rate-limit.seckill.global-rate:5000}")
+    private double globalRate;
+
+    @Value("${hmdp.rate-limit.seckill.global-burst:5000}")
+    private double globalBurst;
+
+    @Value("${hmdp.rate-limit.seckill.voucher-rate:2000}")
+    private double voucherRate;
+
+    @Value("${hmdp.rate-limit.seckill.voucher-burst:2000}")
+    private double voucherBurst;
+
+    @Value("${hmdp.rate-limit.seckill.user-rate:1}")
+    private double userRate;
+
+    @Value("${hmdp.rate-limit.seckill.user-burst:3}")
+    private double userBurst;
+
+    // per-voucher overrides, {rate, burst}; null when the voucher uses the defaults
+    private final TimedCache<Long, double[]> voucherLimits = CacheUtil.newTimedCache(10_000);
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder[] rejected = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Take a token from each bucket of the request.
+     * @return 0 when admitted, otherwise the milliseconds until a retry may succeed
+     */
+    public long acquire(Long voucherId, Long userId) {
+        if (!enabled) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>(3);
+        List<String> args = new ArrayList<>(6);
+        List<Integer> scopes = new ArrayList<>(3);
+        addBucket(keys, args, scopes, 0, SECKILL_LIMIT_KEY + "global", globalRate, globalBurst);
+        if (voucherId != null) {
+            double[] limit = voucherLimit(voucherId);
+            addBucket(keys, args, scopes, 1, SECKILL_LIMIT_KEY + "voucher:" + voucherId, limit[0], limit[1]);
+        }
+        if (userId != null) {
+            addBucket(keys, args, scopes, 2, SECKILL_LIMIT_KEY + "user:" + userId, userRate, userBurst);
+        }
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        List<Long> result;
+        try {
+            result = stringRedisTemplate.execute(LIMIT_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            // fail open, the seckill script itself still guards the stock
+            errors.increment();
+            log.warn("seckill rate limit failed", e);
+            return 0;
+        }
+        int index = result == null ? 0 : result.get(0).intValue();
+        if (index == 0) {
+            admitted.increment();
+            return 0;
+        }
+        rejected[scopes.get(index - 1)].increment();
+        return Math.max(result.get(1), 1);
+    }
+
+    private static void addBucket(List<String> keys, List<String> args, List<Integer> scopes,
+                                  int scope, String key, double rate, double burst) {
+        if (rate <= 0) {
+            return;
+        }
+        keys.add(key);
+        args.add(String.valueOf(rate));
+        // a burst below one token would reject everything
+        args.add(String.valueOf(Math.max(burst, 1)));
+        scopes.add(scope);
+    }
+
+    private double[] voucherLimit(Long voucherId) {
+        double[] limit = voucherLimits.get(voucherId, false);
+        if (limit != null) {
+            return limit;
+        }
+        limit = new double[]{voucherRate, voucherBurst};
+        try {
+            Object value = stringRedisTemplate.opsForHash().get(SECKILL_LIMIT_VOUCHER_RATE_KEY, voucherId.toString());
+            if (value != null) {
+                List<String> parts = StrUtil.split(value.toString(), ':');
+                limit[0] = Double.parseDouble(parts.get(0));
+                limit[1] = parts.size() > 1 ? Double.parseDouble(parts.get(1)) : limit[0];
+            }
+        } catch (Exception e) {
+            log.warn("invalid rate limit of voucher {}", voucherId, e);
+        }
+        voucherLimits.put(voucherId, limit);
+        return limit;
+    }
+
+    /**
+     * Override the bucket of one voucher, a rate of 0 or less removes the limit; null burst means burst = rate.
+     * Other nodes pick it up within 10 seconds.
+     */
+    public void setVoucherLimit(Long voucherId, double rate, Double burst) {
+        String value = rate + ":" + (burst == null ? rate : burst);
+        stringRedisTemplate.opsForHash().put(SECKILL_LIMIT_VOUCHER_RATE_KEY, voucherId.toString(), value);
+        voucherLimits.remove(voucherId);
+    }
+
+    /**
+     * Drop the override of one voucher, so it uses the defaults again.
+     */
+    public void removeVoucherLimit(Long voucherId) {
+        stringRedisTemplate.opsForHash().delete(SECKILL_LIMIT_VOUCHER_RATE_KEY, voucherId.toString());
+        voucherLimits.remove(voucherId);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("admitted", admitted.sum());
+        for (int i = 0; i < SCOPES.length; i++) {
+            stats.put(SCOPES[i] + "Rejected", rejected[i].sum());
+        }
+        stats.put("errors", errors.sum());
+        return stats;
+    }
+}
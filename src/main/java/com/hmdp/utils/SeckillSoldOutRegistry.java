@@ -0,0 +1,121 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * Per-node flags of sold-out seckill vouchers, so late clickers are turned away without touching redis.
+ * The first request on a node that sees a voucher sold out tells the other nodes on seckill:sold-out,
+ * a restock clears the flags everywhere through seckill:restock.
+ * Messages are "voucherId:millis", the time the sold-out result was observed or the restock happened;
+ * a sold-out result observed before the last restock is stale and ignored.
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutRegistry {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // a missed restock message only blocks a voucher this long
+    @Value("${hmdp.seckill.sold-out-ttl-ms:60000}")
+    private long soldOutTtlMillis;
+
+    // voucherId -> sold out until
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    // voucherId -> time of the last restock
+    private final Map<Long, Long> restockedAt = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            long[] body = parseMessage(message.getBody());
+            if (body != null) {
+                markSoldOut(body[0], body[1]);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            long[] body = parseMessage(message.getBody());
+            if (body != null) {
+                restockedAt.merge(body[0], body[1], Math::max);
+                soldOut.remove(body[0]);
+            }
+        }, new ChannelTopic(SECKILL_RESTOCK_CHANNEL));
+    }
+
+    private static long[] parseMessage(byte[] body) {
+        String value = new String(body, StandardCharsets.UTF_8);
+        try {
+            int split = value.indexOf(':');
+            if (split < 0) {
+                return new long[]{Long.parseLong(value), System.currentTimeMillis()};
+            }
+            return new long[]{Long.parseLong(value.substring(0, split)), Long.parseLong(value.substring(split + 1))};
+        } catch (NumberFormatException e) {
+            log.warn("invalid seckill message: {}", value);
+            return null;
+        }
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        Long until = soldOut.get(voucherId);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            soldOut.remove(voucherId, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record a sold-out result of this node, the first one is announced to the other nodes.
+     * @param observedAt time the request that got the result started
+     */
+    public void soldOut(Long voucherId, long observedAt) {
+        if (markSoldOut(voucherId, observedAt)) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":" + observedAt);
+        }
+    }
+
+    /**
+     * Flag a voucher as sold out on this node, unless it was restocked after the result was observed.
+     * @return true if the flag is new
+     */
+    private boolean markSoldOut(Long voucherId, long observedAt) {
+        if (isStale(voucherId, observedAt)) {
+            return false;
+        }
+        long until = System.currentTimeMillis() + soldOutTtlMillis;
+        boolean added = soldOut.put(voucherId, until) == null;
+        // a restock may have cleared the flag between the check and the put
+        if (isStale(voucherId, observedAt)) {
+            soldOut.remove(voucherId, until);
+            return false;
+        }
+        return added;
+    }
+
+    private boolean isStale(Long voucherId, long observedAt) {
+        Long restocked = restockedAt.get(voucherId);
+        return restocked != null && restocked >= observedAt;
+    }
+}
@@ -0,0 +1,182 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * Stock of a hot seckill voucher split across N keys, so the decrements spread over shards/slots.
+ * Every key is touched on its own, so the shards may live on different cluster nodes:
+ * <ol>
+ *     <li>a sold-out marker stops all probing once every shard is empty</li>
+ *     <li>the user claims its purchase with SADD in the claim set of its shard</li>
+ *     <li>the shard picked by user hash is decremented, falling back to its siblings when empty</li>
+ *     <li>the order goes to stream.orders, like seckill.lua does</li>
+ * </ol>
+ * Results follow seckill.lua: 0 ok, 1 sold out, 2 already ordered.
+ */
+@Slf4j
+@Component
+public class ShardedSeckillStock {
+
+    private static final DefaultRedisScript<Long> SHARD_SCRIPT;
+
+    static {
+        SHARD_SCRIPT = new DefaultRedisScript<>();
+        SHARD_SCRIPT.setLocation(new ClassPathResource("seckill_shard.lua"));
+        SHARD_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    // shards per voucher, 1 or less keeps the single seckill:stock:<voucherId> key
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int stockShards;
+
+    // small stocks are not worth sharding
+    @Value("${hmdp.seckill.shard-min-stock:1000}")
+    private int shardMinStock;
+
+    // shard count per voucher, 0 for unsharded ones; it never changes once the voucher exists
+    private final TimedCache<Long, Integer> shardCounts = CacheUtil.newTimedCache(60_000);
+
+    /**
+     * Write the stock of a new voucher, sharded when configured and large enough.
+     */
+    public void init(Long voucherId, int stock) {
+        if (stockShards <= 1 || stock < shardMinStock) {
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < stockShards; i++) {
+                // the remainder goes to the first shards
+                int shardStock = stock / stockShards + (i < stock % stockShards ? 1 : 0);
+                connection.stringCommands().set(bytes(shardKey(voucherId, i)), bytes(String.valueOf(shardStock)));
+            }
+            connection.keyCommands().del(bytes(SECKILL_SOLD_OUT_KEY + voucherId));
+            connection.stringCommands().set(bytes(SECKILL_STOCK_SHARDS_KEY + voucherId), bytes(String.valueOf(stockShards)));
+            return null;
+        });
+        shardCounts.put(voucherId, stockShards);
+    }
+
+    /**
+     * @return the number of shards, 0 if the voucher uses the single stock key
+     */
+    public int shards(Long voucherId) {
+        Integer shards = shardCounts.get(voucherId, false);
+        if (shards == null) {
+            String value = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_SHARDS_KEY + voucherId);
+            shards = value == null ? 0 : Integer.parseInt(value);
+            shardCounts.put(voucherId, shards);
+        }
+        return shards;
+    }
+
+    /**
+     * Add stock in redis, spread over the shards of a sharded voucher.
+     */
+    public void replenish(Long voucherId, int amount) {
+        int shards = shards(voucherId);
+        if (shards == 0) {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId, amount);
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < shards; i++) {
+                int shardAmount = amount / shards + (i < amount % shards ? 1 : 0);
+                if (shardAmount > 0) {
+                    connection.stringCommands().incrBy(bytes(shardKey(voucherId, i)), shardAmount);
+                }
+            }
+            connection.keyCommands().del(bytes(SECKILL_SOLD_OUT_KEY + voucherId));
+            return null;
+        });
+    }
+
+    public int seckill(Long voucherId, Long userId, long orderId, int shards) {
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(SECKILL_SOLD_OUT_KEY + voucherId))) {
+            return 1;
+        }
+        int start = Math.floorMod(userId.hashCode(), shards);
+        String claimKey = SECKILL_ORDER_KEY + voucherId + ":" + start;
+        Long added = stringRedisTemplate.opsForSet().add(claimKey, userId.toString());
+        if (added == null || added == 0) {
+            return 2;
+        }
+        try {
+            for (int i = 0; i < shards; i++) {
+                String shardKey = shardKey(voucherId, (start + i) % shards);
+                Long taken = stringRedisTemplate.execute(SHARD_SCRIPT, Collections.singletonList(shardKey));
+                if (taken != null && taken == 1) {
+                    Map<String, String> order = new HashMap<>();
+                    order.put("userId", userId.toString());
+                    order.put("voucherId", voucherId.toString());
+                    order.put("id", String.valueOf(orderId));
+                    try {
+                        stringRedisTemplate.opsForStream().add(MapRecord.create(SECKILL_ORDER_STREAM, order));
+                    } catch (RuntimeException e) {
+                        stringRedisTemplate.opsForValue().increment(shardKey);
+                        throw e;
+                    }
+                    return 0;
+                }
+            }
+        } catch (RuntimeException e) {
+            // give the claim back, the user may try again
+            stringRedisTemplate.opsForSet().remove(claimKey, userId.toString());
+            throw e;
+        }
+        // every shard is empty
+        stringRedisTemplate.opsForSet().remove(claimKey, userId.toString());
+        markSoldOut(voucherId, shards);
+        return 1;
+    }
+
+    // a unit given back after a failed XADD may land on a shard probed empty a moment ago,
+    // so look at all shards once more, and let the marker expire in case one comes back after that
+    private void markSoldOut(Long voucherId, int shards) {
+        List<String> keys = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            keys.add(shardKey(voucherId, i));
+        }
+        List<String> stocks = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (stocks != null) {
+            for (String stock : stocks) {
+                if (stock != null && Long.parseLong(stock) > 0) {
+                    return;
+                }
+            }
+        }
+        stringRedisTemplate.opsForValue().set(
+                SECKILL_SOLD_OUT_KEY + voucherId, "1", SECKILL_SOLD_OUT_TTL, TimeUnit.SECONDS);
+    }
+
+    private static String shardKey(Long voucherId, int shard) {
+        return SECKILL_STOCK_KEY + voucherId + ":" + shard;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
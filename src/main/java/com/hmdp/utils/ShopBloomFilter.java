@@ -0,0 +1,272 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_KEY;
+
+/**
+ * Bloom filter over existing tb_shop ids, guarding shop lookups against cache penetration.
+ * The bits live in a redis bitmap and are mirrored in memory, so a lookup never leaves the JVM.
+ * Until the startup build finishes every id is treated as possibly existing.
+ */
+@Slf4j
+@Component
+public class ShopBloomFilter {
+
+    private static final int SCAN_PAGE_SIZE = 1000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Value("${hmdp.bloom.shop.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.bloom.shop.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${hmdp.bloom.shop.fpp:0.01}")
+    private double fpp;
+
+    private long numBits;
+    private int numHashFunctions;
+    private AtomicLongArray words;
+    private volatile boolean ready;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        // optimal sizing: m = -n*ln(p)/(ln2)^2, k = m/n*ln2
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        numBits = (m + 63) / 64 * 64;
+        numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        words = new AtomicLongArray((int) (numBits / 64));
+        if (!enabled) {
+            return;
+        }
+        // other nodes announce the ids they add
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            try {
+                setLocal(Long.parseLong(body));
+            } catch (NumberFormatException e) {
+                log.warn("invalid bloom filter message: {}", body);
+            }
+        }, new ChannelTopic(BLOOM_SHOP_ADD_CHANNEL));
+
+        Thread builder = new Thread(this::build, "shop-bloom-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    // stream all shop ids into the local bits, then merge them into the redis bitmap
+    private void build() {
+        long start = System.currentTimeMillis();
+        long count = 0;
+        long lastId = 0;
+        try {
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + SCAN_PAGE_SIZE));
+                for (Shop shop : shops) {
+                    setLocal(shop.getId());
+                }
+                count += shops.size();
+                if (shops.size() < SCAN_PAGE_SIZE) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            mergeWithRedis();
+            ready = true;
+            log.info("shop bloom filter built, ids: {}, bits: {}, hashes: {}, cost: {}ms",
+                    count, numBits, numHashFunctions, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("failed to build shop bloom filter, lookups stay unguarded", e);
+        }
+    }
+
+    // OR the local bits into redis (keeping bits set by other nodes) and read back the union
+    private void mergeWithRedis() {
+        byte[] key = BLOOM_SHOP_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] tmpKey = (BLOOM_SHOP_KEY + ":tmp:" + UUID.randomUUID().toString(true)).getBytes(StandardCharsets.UTF_8);
+        byte[] local = toRedisBitmap();
+        byte[] merged = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> {
+            connection.stringCommands().set(tmpKey, local);
+            connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, key, key, tmpKey);
+            connection.keyCommands().del(tmpKey);
+            return connection.stringCommands().get(key);
+        });
+        orFromRedisBitmap(merged);
+    }
+
+    // pick up bits from other nodes in case a pub/sub message was missed
+    @Scheduled(fixedDelayString = "${hmdp.bloom.shop.sync-interval-ms:300000}")
+    public void syncFromRedis() {
+        if (!enabled || !ready) {
+            return;
+        }
+        byte[] key = BLOOM_SHOP_KEY.getBytes(StandardCharsets.UTF_8);
+        orFromRedisBitmap(stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key)));
+    }
+
+    public void add(Long id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        long[] offsets = offsets(id);
+        for (long offset : offsets) {
+            setBit(offset);
+        }
+        byte[] key = BLOOM_SHOP_KEY.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.stringCommands().setBit(key, offset, true);
+            }
+            return null;
+        });
+        stringRedisTemplate.convertAndSend(BLOOM_SHOP_ADD_CHANNEL, id.toString());
+    }
+
+    public boolean mightContain(Long id) {
+        if (!enabled || !ready) {
+            return true;
+        }
+        checks.increment();
+        for (long offset : offsets(id)) {
+            if ((words.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                rejected.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the id passed the filter but the database does not have it, called on database misses only
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public Map<String, Object> stats() {
+        long setBits = 0;
+        for (int i = 0; i < words.length(); i++) {
+            setBits += Long.bitCount(words.get(i));
+        }
+        long rejectedCount = rejected.sum();
+        long falsePositiveCount = falsePositives.sum();
+        long absentTotal = rejectedCount + falsePositiveCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("bits", numBits);
+        stats.put("hashFunctions", numHashFunctions);
+        stats.put("fillRatio", (double) setBits / numBits);
+        // (fraction of set bits)^k is the chance a random absent id passes every probe
+        stats.put("estimatedFpp", Math.pow((double) setBits / numBits, numHashFunctions));
+        stats.put("checks", checks.sum());
+        stats.put("rejected", rejectedCount);
+        stats.put("falsePositives", falsePositiveCount);
+        // repeated lookups of a cached empty id are not counted as false positives again
+        stats.put("observedFpp", absentTotal == 0 ? 0D : (double) falsePositiveCount / absentTotal);
+        return stats;
+    }
+
+    private void setLocal(long id) {
+        for (long offset : offsets(id)) {
+            setBit(offset);
+        }
+    }
+
+    private void setBit(long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << offset;
+        long word;
+        do {
+            word = words.get(index);
+            if ((word & mask) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(index, word, word | mask));
+    }
+
+    // Kirsch-Mitzenmacher double hashing over a 64 bit mix of the id
+    private long[] offsets(long id) {
+        long h1 = mix64(id);
+        long h2 = mix64(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        long[] offsets = new long[numHashFunctions];
+        for (int i = 0; i < numHashFunctions; i++) {
+            offsets[i] = Math.floorMod(h1 + i * h2, numBits);
+        }
+        return offsets;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    // redis bitmaps are big-endian per byte: offset 0 is the highest bit of the first byte
+    private byte[] toRedisBitmap() {
+        byte[] bytes = new byte[(int) (numBits / 8)];
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            for (int b = 0; b < 8; b++) {
+                bytes[i * 8 + b] = (byte) Long.reverse(word >>> (b * 8) << 56);
+            }
+        }
+        return bytes;
+    }
+
+    private void orFromRedisBitmap(byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        int length = (int) Math.min(bytes.length, numBits / 8);
+        for (int j = 0; j < length; j++) {
+            int value = bytes[j] & 0xFF;
+            if (value == 0) {
+                continue;
+            }
+            for (int bit = 0; bit < 8; bit++) {
+                if ((value & (0x80 >>> bit)) != 0) {
+                    setBit(j * 8L + bit);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_LOGICAL_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * Preloads the shop:geo: index and the cache:shop: entries, so a flushed or
+ * failed-over redis does not send every first request to MySQL.
+ * Streams tb_shop in id order and writes each page with one GEOADD pipeline and one SET pipeline.
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Value("${hmdp.warmup.shop.on-boot:true}")
+    private boolean onBoot;
+
+    @Value("${hmdp.warmup.shop.page-size:500}")
+    private int pageSize;
+
+    // entries are written in the format the shop query path reads
+    @Value("${hmdp.cache.shop-strategy:logical_expire}")
+    private String shopStrategyName;
+
+    // each ttl is stretched by up to this share, so the warmed keys do not expire in one wave
+    @Value("${hmdp.warmup.shop.ttl-jitter:0.2}")
+    private double ttlJitter;
+
+    // only these shop types, empty for all
+    @Value("${hmdp.warmup.shop.type-ids:}")
+    private String typeIds;
+
+    // only these shops get cache entries, empty for all scanned shops
+    @Value("${hmdp.warmup.shop.hot-ids:}")
+    private String hotIds;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong geoWritten = new AtomicLong();
+    private final AtomicLong cacheWritten = new AtomicLong();
+    private volatile long lastId;
+    private volatile LocalDateTime startTime;
+    private volatile LocalDateTime endTime;
+    private volatile String error;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (onBoot) {
+            start(parseIds(typeIds), parseIds(hotIds));
+        }
+    }
+
+    /**
+     * @return false if a warm-up is already running
+     */
+    public boolean start(Set<Long> typeIdFilter, Set<Long> hotIdFilter) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        scanned.set(0);
+        geoWritten.set(0);
+        cacheWritten.set(0);
+        lastId = 0;
+        error = null;
+        startTime = LocalDateTime.now();
+        endTime = null;
+        Thread worker = new Thread(() -> warmUp(typeIdFilter, hotIdFilter), "shop-cache-warmer");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+
+    private void warmUp(Set<Long> typeIdFilter, Set<Long> hotIdFilter) {
+        CacheStrategy shopStrategy = CacheStrategy.valueOf(shopStrategyName.toUpperCase());
+        try {
+            while (true) {
+                long start = System.currentTimeMillis();
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .gt("id", lastId)
+                        .in(!typeIdFilter.isEmpty(), "type_id", typeIdFilter)
+                        .orderByAsc("id")
+                        .last("LIMIT " + pageSize));
+                // the wall time of one query stands in for the rebuild of one entry
+                long rebuildMillis = Math.max(System.currentTimeMillis() - start, 1);
+                if (shops.isEmpty()) {
+                    break;
+                }
+                writeGeo(shops);
+                Map<Long, Shop> hot = new LinkedHashMap<>();
+                for (Shop shop : shops) {
+                    if (hotIdFilter.isEmpty() || hotIdFilter.contains(shop.getId())) {
+                        hot.put(shop.getId(), shop);
+                    }
+                }
+                if (shopStrategy == CacheStrategy.LOGICAL_EXPIRE) {
+                    cacheClient.setWithLogicalExpireBatch(CACHE_SHOP_KEY, hot, CACHE_SHOP_LOGICAL_TTL, TimeUnit.SECONDS,
+                            rebuildMillis, ttlJitter);
+                } else {
+                    cacheClient.setBatch(CACHE_SHOP_KEY, hot, CACHE_SHOP_TTL, TimeUnit.MINUTES, ttlJitter);
+                }
+                cacheWritten.addAndGet(hot.size());
+                scanned.addAndGet(shops.size());
+                lastId = shops.get(shops.size() - 1).getId();
+                if (shops.size() < pageSize) {
+                    break;
+                }
+            }
+            log.info("shop warm-up finished, scanned: {}, geo: {}, cache: {}",
+                    scanned.get(), geoWritten.get(), cacheWritten.get());
+        } catch (Exception e) {
+            error = e.toString();
+            log.error("shop warm-up failed at id {}", lastId, e);
+        } finally {
+            endTime = LocalDateTime.now();
+            running.set(false);
+        }
+    }
+
+    private void writeGeo(List<Shop> shops) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Shop shop : shops) {
+                if (shop.getX() == null || shop.getY() == null) {
+                    continue;
+                }
+                connection.geoCommands().geoAdd(
+                        (SHOP_GEO_KEY + shop.getTypeId()).getBytes(StandardCharsets.UTF_8),
+                        new Point(shop.getX(), shop.getY()),
+                        shop.getId().toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        geoWritten.addAndGet(shops.size());
+    }
+
+    public Map<String, Object> progress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("running", running.get());
+        progress.put("startTime", startTime);
+        progress.put("endTime", endTime);
+        progress.put("scanned", scanned.get());
+        progress.put("geoWritten", geoWritten.get());
+        progress.put("cacheWritten", cacheWritten.get());
+        progress.put("lastId", lastId);
+        progress.put("error", error);
+        return progress;
+    }
+
+    public static Set<Long> parseIds(String ids) {
+        Set<Long> result = new LinkedHashSet<>();
+        if (StrUtil.isBlank(ids)) {
+            return result;
+        }
+        for (String id : StrUtil.split(ids, ',')) {
+            if (StrUtil.isNotBlank(id)) {
+                result.add(Long.valueOf(id.trim()));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,35 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Published after a shop is created, updated or deleted.
+ * Local events are also broadcast to the other nodes, where they arrive with {@code remote = true}.
+ */
+@Data
+@NoArgsConstructor
+public class ShopChangeEvent {
+
+    public static final String CREATE = "CREATE";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+
+    private String type;
+    private Long shopId;
+    // the row before the change, null on create
+    private Shop before;
+    // the row after the change, null on delete
+    private Shop after;
+    // node that made the change
+    private String origin;
+    private boolean remote;
+
+    public ShopChangeEvent(String type, Long shopId, Shop before, Shop after) {
+        this.type = type;
+        this.shopId = shopId;
+        this.before = before;
+        this.after = after;
+    }
+}
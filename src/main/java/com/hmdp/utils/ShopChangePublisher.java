@@ -0,0 +1,81 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGE_CHANNEL;
+
+/**
+ * Publishes {@link ShopChangeEvent}s as spring events on this node and through redis pub/sub on the others.
+ * Inside a transaction the event waits for the commit, so a rolled back change never reaches the indexes.
+ */
+@Slf4j
+@Component
+public class ShopChangePublisher {
+
+    private static final String NODE_ID = UUID.randomUUID().toString(true);
+
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                ShopChangeEvent event = JSONUtil.toBean(
+                        new String(message.getBody(), StandardCharsets.UTF_8), ShopChangeEvent.class);
+                // our own events were already delivered locally
+                if (NODE_ID.equals(event.getOrigin())) {
+                    return;
+                }
+                event.setRemote(true);
+                applicationEventPublisher.publishEvent(event);
+            } catch (Exception e) {
+                log.error("failed to handle shop change message", e);
+            }
+        }, new ChannelTopic(SHOP_CHANGE_CHANNEL));
+    }
+
+    public void publish(ShopChangeEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    try {
+                        send(event);
+                    } catch (Exception e) {
+                        // tb_shop is ahead of the indexes now, reconcile fixes the geo sets
+                        log.error("failed to publish the change of shop {}", event.getShopId(), e);
+                    }
+                }
+            });
+            return;
+        }
+        send(event);
+    }
+
+    private void send(ShopChangeEvent event) {
+        event.setOrigin(NODE_ID);
+        event.setRemote(false);
+        applicationEventPublisher.publishEvent(event);
+        stringRedisTemplate.convertAndSend(SHOP_CHANGE_CHANNEL, JSONUtil.toJsonStr(event));
+    }
+}
@@ -0,0 +1,237 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopTypeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.LOCK_KEY_PREFIX;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * Keeps the shop:geo:<typeId> sets in step with tb_shop.
+ * Shop change events are queued and applied in pipelined batches: GEOADD for new and moved shops,
+ * ZREM from the old type set when the type changes or the shop is deleted.
+ * A periodic reconciliation repairs anything the events missed.
+ */
+@Slf4j
+@Component
+public class ShopGeoMaintainer {
+
+    private static final int FLUSH_BATCH_SIZE = 500;
+    private static final int RECONCILE_PAGE_SIZE = 1000;
+    // about 1 meter, redis geo positions are not stored exactly
+    private static final double POSITION_EPSILON = 0.00001;
+    private static final String RECONCILE_LOCK_KEY = LOCK_KEY_PREFIX + "shop:geo:reconcile";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    private final BlockingQueue<ShopChangeEvent> queue = new LinkedBlockingQueue<>();
+
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder reconcileAdded = new LongAdder();
+    private final LongAdder reconcileRemoved = new LongAdder();
+    private final AtomicLong lastReconcileMillis = new AtomicLong();
+
+    @EventListener
+    public void onShopChange(ShopChangeEvent event) {
+        // the node that made the change owns the redis write, remote copies only feed local state
+        if (event.isRemote()) {
+            return;
+        }
+        queue.offer(event);
+    }
+
+    @Scheduled(fixedDelayString = "${hmdp.shop.geo.flush-interval-ms:100}")
+    public void flush() {
+        List<ShopChangeEvent> events = new ArrayList<>();
+        while (queue.drainTo(events, FLUSH_BATCH_SIZE) > 0) {
+            try {
+                apply(events);
+            } catch (Exception e) {
+                // reconciliation picks these up later
+                log.error("failed to apply {} shop geo changes", events.size(), e);
+            }
+            events.clear();
+        }
+    }
+
+    private void apply(List<ShopChangeEvent> events) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            // in order, so a burst of changes to one shop ends in its latest state
+            for (ShopChangeEvent event : events) {
+                Shop before = event.getBefore();
+                Shop after = event.getAfter();
+                boolean removed = after == null || ShopChangeEvent.DELETE.equals(event.getType());
+                if (before != null && before.getTypeId() != null
+                        && (removed || !before.getTypeId().equals(after.getTypeId()))) {
+                    connection.zSetCommands().zRem(geoKey(before.getTypeId()), member(event.getShopId()));
+                }
+                if (!removed && after.getTypeId() != null && after.getX() != null && after.getY() != null) {
+                    geoAdd(connection, after.getTypeId(), event.getShopId(), after.getX(), after.getY());
+                }
+            }
+            return null;
+        });
+        applied.add(events.size());
+        batches.increment();
+    }
+
+    @Scheduled(initialDelayString = "${hmdp.shop.geo.reconcile-interval-ms:600000}",
+            fixedDelayString = "${hmdp.shop.geo.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        // one node at a time is enough
+        RLock lock = redissonClient.getLock(RECONCILE_LOCK_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Map<Long, Map<Long, Shop>> expected = loadShopsByType();
+            // types without any shop left still need their stale members removed
+            for (ShopType type : shopTypeMapper.selectList(new QueryWrapper<ShopType>().select("id"))) {
+                expected.putIfAbsent(type.getId(), Collections.emptyMap());
+            }
+            for (Map.Entry<Long, Map<Long, Shop>> entry : expected.entrySet()) {
+                reconcileType(entry.getKey(), entry.getValue());
+            }
+            lastReconcileMillis.set(System.currentTimeMillis() - start);
+            log.info("shop geo sets reconciled, types: {}, cost: {}ms", expected.size(), lastReconcileMillis.get());
+        } catch (Exception e) {
+            log.error("failed to reconcile shop geo sets", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<Long, Map<Long, Shop>> loadShopsByType() {
+        Map<Long, Map<Long, Shop>> shopsByType = new HashMap<>();
+        long lastId = 0;
+        while (true) {
+            List<Shop> page = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "x", "y")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + RECONCILE_PAGE_SIZE));
+            for (Shop shop : page) {
+                if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                    shopsByType.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>()).put(shop.getId(), shop);
+                }
+            }
+            if (page.size() < RECONCILE_PAGE_SIZE) {
+                return shopsByType;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private void reconcileType(Long typeId, Map<Long, Shop> shops) {
+        String key = SHOP_GEO_KEY + typeId;
+        Set<String> members = stringRedisTemplate.opsForZSet().range(key, 0, -1);
+        if (members == null) {
+            members = Collections.emptySet();
+        }
+        List<String> stale = new ArrayList<>();
+        List<String> present = new ArrayList<>();
+        for (String member : members) {
+            Shop shop = shops.get(Long.valueOf(member));
+            if (shop == null) {
+                stale.add(member);
+            } else {
+                present.add(member);
+            }
+        }
+
+        // missing shops and shops whose stored position drifted from the row
+        List<Shop> toAdd = new ArrayList<>();
+        Set<Long> presentIds = new HashSet<>();
+        for (int i = 0; i < present.size(); i += RECONCILE_PAGE_SIZE) {
+            List<String> chunk = present.subList(i, Math.min(i + RECONCILE_PAGE_SIZE, present.size()));
+            List<Point> positions = stringRedisTemplate.opsForGeo().position(key, chunk.toArray(new String[0]));
+            for (int j = 0; j < chunk.size(); j++) {
+                Shop shop = shops.get(Long.valueOf(chunk.get(j)));
+                presentIds.add(shop.getId());
+                Point point = positions == null ? null : positions.get(j);
+                if (point == null
+                        || Math.abs(point.getX() - shop.getX()) > POSITION_EPSILON
+                        || Math.abs(point.getY() - shop.getY()) > POSITION_EPSILON) {
+                    toAdd.add(shop);
+                }
+            }
+        }
+        for (Shop shop : shops.values()) {
+            if (!presentIds.contains(shop.getId())) {
+                toAdd.add(shop);
+            }
+        }
+        if (stale.isEmpty() && toAdd.isEmpty()) {
+            return;
+        }
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String member : stale) {
+                connection.zSetCommands().zRem(geoKey(typeId), member.getBytes(StandardCharsets.UTF_8));
+            }
+            for (Shop shop : toAdd) {
+                geoAdd(connection, typeId, shop.getId(), shop.getX(), shop.getY());
+            }
+            return null;
+        });
+        reconcileRemoved.add(stale.size());
+        reconcileAdded.add(toAdd.size());
+        log.warn("shop geo set {} repaired, added: {}, removed: {}", key, toAdd.size(), stale.size());
+    }
+
+    private static void geoAdd(RedisConnection connection, Long typeId, Long shopId, double x, double y) {
+        connection.geoCommands().geoAdd(geoKey(typeId), new Point(x, y), member(shopId));
+    }
+
+    private static byte[] geoKey(Long typeId) {
+        return (SHOP_GEO_KEY + typeId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] member(Long shopId) {
+        return shopId.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("applied", applied.sum());
+        stats.put("batches", batches.sum());
+        stats.put("reconcileAdded", reconcileAdded.sum());
+        stats.put("reconcileRemoved", reconcileRemoved.sum());
+        stats.put("lastReconcileMillis", lastReconcileMillis.get());
+        return stats;
+    }
+}
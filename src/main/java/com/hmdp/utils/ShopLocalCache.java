@@ -0,0 +1,115 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.hmdp.entity.Shop;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_INVALIDATE_CHANNEL;
+
+/**
+ * In-process L1 cache in front of the cache:shop: entries.
+ * Entries are evicted by size (LRU) and by ttl, and invalidated on every node
+ * through redis pub/sub when a shop is updated.
+ */
+@Slf4j
+@Component
+public class ShopLocalCache {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${hmdp.cache.shop-local.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.cache.shop-local.capacity:1000}")
+    private int capacity;
+
+    @Value("${hmdp.cache.shop-local.ttl-seconds:10}")
+    private long ttlSeconds;
+
+    private LRUCache<Long, Shop> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        cache = CacheUtil.newLRUCache(capacity, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        // evict the local copy whenever any node publishes an invalidation
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            try {
+                evict(Long.valueOf(body));
+            } catch (NumberFormatException e) {
+                log.warn("invalid shop invalidation message: {}", body);
+            }
+        }, new ChannelTopic(CACHE_SHOP_INVALIDATE_CHANNEL));
+    }
+
+    public Shop get(Long id) {
+        if (!enabled) {
+            return null;
+        }
+        // do not refresh last access, so the ttl bounds staleness from the time of put
+        Shop shop = cache.get(id, false);
+        if (shop == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return shop;
+    }
+
+    public void put(Long id, Shop shop) {
+        if (!enabled || shop == null) {
+            return;
+        }
+        cache.put(id, shop);
+    }
+
+    // evict locally and tell the other nodes to do the same
+    public void invalidate(Long id) {
+        evict(id);
+        stringRedisTemplate.convertAndSend(CACHE_SHOP_INVALIDATE_CHANNEL, id.toString());
+    }
+
+    private void evict(Long id) {
+        cache.remove(id);
+        invalidations.increment();
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("size", cache.size());
+        stats.put("capacity", capacity);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0D : (double) hitCount / total);
+        // every local hit is one redis GET (plus JSON parsing) that did not happen
+        stats.put("redisRoundTripsSaved", hitCount);
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+}
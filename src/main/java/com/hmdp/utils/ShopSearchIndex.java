@@ -0,0 +1,273 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory n-gram index over shop names and addresses.
+ * Every posting list is kept in rank order (score desc, sold desc, id desc), so a query walks the
+ * shortest list of its grams and stops as soon as a page of verified matches is found.
+ * Names are indexed by 1- and 2-grams, addresses by 2-grams, so single-character queries match names only.
+ * Loaded from tb_shop at startup and updated by {@link ShopChangeEvent}s from every node.
+ */
+@Slf4j
+@Component
+public class ShopSearchIndex {
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private static final Comparator<Entry> RANK = Comparator
+            .comparingInt((Entry e) -> e.score).reversed()
+            .thenComparing(Comparator.comparingInt((Entry e) -> e.sold).reversed())
+            .thenComparing(Comparator.comparingLong((Entry e) -> e.id).reversed());
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Posting> postings = new ConcurrentHashMap<>();
+    // every shop in rank order, for blank queries
+    private final NavigableSet<Entry> all = new ConcurrentSkipListSet<>(RANK);
+    private volatile boolean ready;
+
+    @PostConstruct
+    private void init() {
+        Thread loader = new Thread(this::load, "shop-search-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        try {
+            while (true) {
+                List<Shop> page = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "name", "address", "score", "sold")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + LOAD_PAGE_SIZE));
+                page.forEach(this::put);
+                if (page.size() < LOAD_PAGE_SIZE) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+            ready = true;
+            log.info("shop search index loaded, shops: {}, grams: {}, cost: {}ms",
+                    entries.size(), postings.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("failed to load shop search index", e);
+        }
+    }
+
+    @EventListener
+    public void onShopChange(ShopChangeEvent event) {
+        Shop after = event.getAfter();
+        if (ShopChangeEvent.DELETE.equals(event.getType()) || after == null) {
+            remove(event.getShopId());
+            return;
+        }
+        put(after);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized void put(Shop shop) {
+        if (shop.getId() == null) {
+            return;
+        }
+        Entry entry = new Entry(shop);
+        Entry old = entries.put(entry.id, entry);
+        if (old != null) {
+            unlink(old);
+        }
+        all.add(entry);
+        for (String gram : grams(entry)) {
+            postings.computeIfAbsent(gram, k -> new Posting()).add(entry);
+        }
+    }
+
+    public synchronized void remove(Long id) {
+        Entry old = entries.remove(id);
+        if (old != null) {
+            unlink(old);
+        }
+    }
+
+    private void unlink(Entry entry) {
+        all.remove(entry);
+        for (String gram : grams(entry)) {
+            Posting posting = postings.get(gram);
+            if (posting != null && posting.remove(entry) && posting.size() == 0) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * @param query  text to look for in names and addresses, blank for all shops
+     * @param cursor from the previous page, null for the first one
+     * @return ids of up to {@code limit} matching shops in rank order, and the cursor of the next page
+     */
+    public Page search(String query, String cursor, int limit) {
+        String q = normalize(query);
+        NavigableSet<Entry> candidates = all;
+        if (!q.isEmpty()) {
+            // the rarest gram bounds the scan, compared by the kept counts since skip list size() walks the list
+            Posting rarest = null;
+            for (String gram : queryGrams(q)) {
+                Posting posting = postings.get(gram);
+                if (posting == null) {
+                    return new Page(Collections.emptyList(), null);
+                }
+                if (rarest == null || posting.size() < rarest.size()) {
+                    rarest = posting;
+                }
+            }
+            candidates = rarest.entries;
+        }
+        long[] after = CursorUtils.decode(cursor, 3);
+        if (after != null) {
+            candidates = candidates.tailSet(new Entry(after[2], (int) after[0], (int) after[1]), false);
+        }
+
+        List<Long> ids = new ArrayList<>(limit);
+        Entry last = null;
+        for (Entry entry : candidates) {
+            if (!q.isEmpty() && !entry.name.contains(q) && !entry.address.contains(q)) {
+                continue;
+            }
+            if (ids.size() == limit) {
+                // a further match exists, hand out a cursor
+                return new Page(ids, CursorUtils.encode(last.score, last.sold, last.id));
+            }
+            ids.add(entry.id);
+            last = entry;
+        }
+        return new Page(ids, null);
+    }
+
+    private static Set<String> grams(Entry entry) {
+        Set<String> grams = new HashSet<>();
+        String name = entry.name;
+        for (int i = 0; i < name.length(); i++) {
+            grams.add(name.substring(i, i + 1));
+            if (i + 2 <= name.length()) {
+                grams.add(name.substring(i, i + 2));
+            }
+        }
+        String address = entry.address;
+        for (int i = 0; i + 2 <= address.length(); i++) {
+            grams.add(address.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    private static List<String> queryGrams(String q) {
+        if (q.length() == 1) {
+            return Collections.singletonList(q);
+        }
+        List<String> grams = new ArrayList<>(q.length() - 1);
+        for (int i = 0; i + 2 <= q.length(); i++) {
+            grams.add(q.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return StrUtil.isBlank(text) ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("shops", entries.size());
+        stats.put("grams", postings.size());
+        return stats;
+    }
+
+    public static final class Page {
+
+        private final List<Long> ids;
+        private final String cursor;
+
+        Page(List<Long> ids, String cursor) {
+            this.ids = ids;
+            this.cursor = cursor;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public String getCursor() {
+            return cursor;
+        }
+    }
+
+    // a posting list with its size, ConcurrentSkipListSet.size() is a full traversal
+    private static final class Posting {
+
+        final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(RANK);
+        final AtomicInteger size = new AtomicInteger();
+
+        void add(Entry entry) {
+            if (entries.add(entry)) {
+                size.incrementAndGet();
+            }
+        }
+
+        boolean remove(Entry entry) {
+            if (entries.remove(entry)) {
+                size.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        int size() {
+            return size.get();
+        }
+    }
+
+    private static final class Entry {
+
+        final long id;
+        final String name;
+        final String address;
+        final int score;
+        final int sold;
+
+        Entry(Shop shop) {
+            this.id = shop.getId();
+            this.name = normalize(shop.getName());
+            this.address = normalize(shop.getAddress());
+            this.score = shop.getScore() == null ? 0 : shop.getScore();
+            this.sold = shop.getSold() == null ? 0 : shop.getSold();
+        }
+
+        // a probe carrying only the sort key, for cursor positioning
+        Entry(long id, int score, int sold) {
+            this.id = id;
+            this.name = "";
+            this.address = "";
+            this.score = score;
+            this.sold = sold;
+        }
+    }
+}
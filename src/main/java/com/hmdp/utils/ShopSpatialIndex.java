@@ -0,0 +1,225 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory grid index over shop coordinates, an alternative to redis GEOSEARCH.
+ * Shops are bucketed into fixed lon/lat cells per type; a radius query scans only the cells
+ * overlapping the search circle and keeps the k nearest with a bounded heap.
+ * Loaded from tb_shop at startup and kept current by {@link ShopChangeEvent}s from every node.
+ */
+@Slf4j
+@Component
+public class ShopSpatialIndex {
+
+    // same earth radius as redis geo commands, so distances agree
+    private static final double EARTH_RADIUS_METERS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180;
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    // cell edge, 0.01 degree is about 1.1 km of latitude
+    @Value("${hmdp.shop.geo.local-cell-degrees:0.01}")
+    private double cellDegrees = 0.01;
+
+    private final Map<Long, IndexedShop> shops = new ConcurrentHashMap<>();
+    // typeId -> cell -> shops
+    private final Map<Long, Map<Long, Set<IndexedShop>>> cells = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    @PostConstruct
+    private void init() {
+        Thread loader = new Thread(this::load, "shop-spatial-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        try {
+            while (true) {
+                List<Shop> page = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "type_id", "x", "y")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + LOAD_PAGE_SIZE));
+                for (Shop shop : page) {
+                    put(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+                }
+                if (page.size() < LOAD_PAGE_SIZE) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+            ready = true;
+            log.info("shop spatial index loaded, shops: {}, cost: {}ms", shops.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("failed to load shop spatial index", e);
+        }
+    }
+
+    @EventListener
+    public void onShopChange(ShopChangeEvent event) {
+        Shop after = event.getAfter();
+        if (ShopChangeEvent.DELETE.equals(event.getType()) || after == null) {
+            remove(event.getShopId());
+            return;
+        }
+        put(after.getId(), after.getTypeId(), after.getX(), after.getY());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return shops.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("shops", shops.size());
+        stats.put("types", cells.size());
+        stats.put("cells", cells.values().stream().mapToInt(Map::size).sum());
+        stats.put("cellDegrees", cellDegrees);
+        return stats;
+    }
+
+    public void put(Long id, Long typeId, Double x, Double y) {
+        if (id == null || typeId == null || x == null || y == null) {
+            return;
+        }
+        IndexedShop shop = new IndexedShop(id, typeId, x, y);
+        IndexedShop old = shops.put(id, shop);
+        if (old != null) {
+            removeFromCell(old);
+        }
+        cells.computeIfAbsent(typeId, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(cellOf(x, y), k -> ConcurrentHashMap.newKeySet())
+                .add(shop);
+    }
+
+    public void remove(Long id) {
+        IndexedShop old = shops.remove(id);
+        if (old != null) {
+            removeFromCell(old);
+        }
+    }
+
+    private void removeFromCell(IndexedShop shop) {
+        Map<Long, Set<IndexedShop>> typeCells = cells.get(shop.typeId);
+        if (typeCells == null) {
+            return;
+        }
+        Set<IndexedShop> cell = typeCells.get(cellOf(shop.x, shop.y));
+        if (cell != null) {
+            cell.remove(shop);
+        }
+    }
+
+    /**
+     * @param typeId shop type, null for all types
+     * @return up to {@code limit} shop ids within {@code radiusMeters}, nearest first, mapped to their distance in meters
+     */
+    public Map<Long, Double> search(Long typeId, double x, double y, double radiusMeters, int limit) {
+        Map<Long, Double> result = new LinkedHashMap<>();
+        if (limit <= 0) {
+            return result;
+        }
+        List<Map<Long, Set<IndexedShop>>> targets = new ArrayList<>();
+        if (typeId == null) {
+            targets.addAll(cells.values());
+        } else if (cells.containsKey(typeId)) {
+            targets.add(cells.get(typeId));
+        }
+        if (targets.isEmpty()) {
+            return result;
+        }
+
+        // cells overlapping the bounding box of the circle, longitude degrees shrink with latitude
+        double latSpan = radiusMeters / METERS_PER_DEGREE;
+        double lonSpan = latSpan / Math.max(Math.cos(Math.toRadians(y)), 0.01);
+        long minCellX = (long) Math.floor((x - lonSpan) / cellDegrees);
+        long maxCellX = (long) Math.floor((x + lonSpan) / cellDegrees);
+        long minCellY = (long) Math.floor((y - latSpan) / cellDegrees);
+        long maxCellY = (long) Math.floor((y + latSpan) / cellDegrees);
+
+        // max-heap on distance keeps the k nearest
+        PriorityQueue<double[]> nearest = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(b[1], a[1]));
+        for (Map<Long, Set<IndexedShop>> typeCells : targets) {
+            for (long cx = minCellX; cx <= maxCellX; cx++) {
+                for (long cy = minCellY; cy <= maxCellY; cy++) {
+                    Set<IndexedShop> cell = typeCells.get(cellKey(cx, cy));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (IndexedShop shop : cell) {
+                        double distance = distance(x, y, shop.x, shop.y);
+                        if (distance > radiusMeters) {
+                            continue;
+                        }
+                        if (nearest.size() < limit) {
+                            nearest.offer(new double[]{shop.id, distance});
+                        } else if (distance < nearest.peek()[1]) {
+                            nearest.poll();
+                            nearest.offer(new double[]{shop.id, distance});
+                        }
+                    }
+                }
+            }
+        }
+        double[][] sorted = nearest.toArray(new double[0][]);
+        Arrays.sort(sorted, Comparator.comparingDouble(a -> a[1]));
+        for (double[] hit : sorted) {
+            result.put((long) hit[0], hit[1]);
+        }
+        return result;
+    }
+
+    // haversine, as used by redis
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private long cellOf(double x, double y) {
+        return cellKey((long) Math.floor(x / cellDegrees), (long) Math.floor(y / cellDegrees));
+    }
+
+    private static long cellKey(long cellX, long cellY) {
+        return (cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    private static final class IndexedShop {
+
+        final long id;
+        final long typeId;
+        final double x;
+        final double y;
+
+        IndexedShop(long id, long typeId, double x, double y) {
+            this.id = id;
+            this.typeId = typeId;
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
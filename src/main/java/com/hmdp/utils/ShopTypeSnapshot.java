@@ -0,0 +1,40 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.ShopType;
+
+import java.util.List;
+
+/**
+ * Immutable view of the shop types at one version, with the response body serialized once.
+ */
+public final class ShopTypeSnapshot {
+
+    private final long version;
+    private final List<ShopType> types;
+    private final byte[] body;
+    private final String etag;
+
+    public ShopTypeSnapshot(long version, List<ShopType> types, byte[] body, String etag) {
+        this.version = version;
+        this.types = types;
+        this.body = body;
+        this.etag = etag;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<ShopType> getTypes() {
+        return types;
+    }
+
+    // shared, callers must not modify it
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+}
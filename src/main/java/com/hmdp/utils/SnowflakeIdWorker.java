@@ -0,0 +1,220 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+
+/**
+ * Local 64 bit ids: ticks of 1/1024 second since {@link RedisIdWorker#TIME_STAMP}, 10 bits of worker id, 12 bits of sequence.
+ * With 1024 ticks per second the high 32 bits are still the seconds of RedisIdWorker ids,
+ * so ids of the two workers can only meet within the same second, i.e. while nodes run mixed modes.
+ * The worker id is leased from redis and renewed by a heartbeat; a renewal that finds another node's token
+ * means the lease was lost, and a new worker id is leased. Ids are only issued until the local lease deadline,
+ * so a node that cannot reach redis stops before another node can take its worker id.
+ * The lease value keeps the last state issued under the worker id, and a new holder starts after it.
+ * Timestamp and sequence live in one long: the next state is max(now << 12, last + 1), so a clock that
+ * moves backwards, or more than 4096 ids in one tick, only lets the timestamp run ahead of the wall clock.
+ */
+@Slf4j
+@Component
+public class SnowflakeIdWorker {
+
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_WORKERS = 1 << WORKER_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TICK_BITS = 10;
+    private static final long EPOCH_TICKS = RedisIdWorker.TIME_STAMP << TICK_BITS;
+
+    // the key outlives the lease, long enough that the clock has passed any state stored in it
+    private static final long KEEP_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
+    private static final DefaultRedisScript<String> LEASE_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("worker_lease.lua"));
+        LEASE_SCRIPT.setResultType(String.class);
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("worker_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("worker_release.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.id.mode:incr}")
+    private String mode;
+
+    @Value("${hmdp.id.worker-lease-seconds:30}")
+    private long leaseSeconds;
+
+    // local wall clock like RedisIdWorker, cached since TimeZone.getDefault() returns a copy
+    private final TimeZone zone = TimeZone.getDefault();
+
+    // a node whose clock has run this far ahead of the wall clock is logged
+    @Value("${hmdp.id.max-clock-drift-ms:1000}")
+    private long maxClockDriftMillis;
+
+    // the wall clock, replaced in tests
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private final String token = UUID.randomUUID().toString(true);
+    // -1 while no worker id is held
+    private volatile long workerId = -1;
+    // local time the lease ends unless renewed, no id is issued after it
+    private volatile long leaseDeadline;
+    // (ticks since epoch << SEQUENCE_BITS) | sequence of the last id
+    private final AtomicLong state = new AtomicLong();
+    private volatile long lastDriftWarnMillis;
+
+    @PostConstruct
+    private void init() {
+        if (enabled()) {
+            lease();
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        long id = workerId;
+        if (id >= 0) {
+            workerId = -1;
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(ID_WORKER_KEY + id),
+                    token, String.valueOf(KEEP_SECONDS), String.valueOf(state.get()));
+        }
+    }
+
+    public boolean enabled() {
+        return "snowflake".equalsIgnoreCase(mode);
+    }
+
+    public long nextId() {
+        long worker = workerId;
+        if (worker < 0) {
+            throw new IllegalStateException("no worker id leased");
+        }
+        long nowMillis = clock.getAsLong();
+        if (nowMillis >= leaseDeadline) {
+            // another node may hold this worker id by now
+            throw new IllegalStateException("the lease of worker id " + worker + " ran out without a renewal");
+        }
+        long localMillis = nowMillis + zone.getOffset(nowMillis);
+        long now = ((localMillis << TICK_BITS) / 1000 - EPOCH_TICKS) << SEQUENCE_BITS;
+        long prev;
+        long next;
+        do {
+            prev = state.get();
+            next = Math.max(now, prev + 1);
+        } while (!state.compareAndSet(prev, next));
+        if (next - now > ((maxClockDriftMillis << TICK_BITS) / 1000 << SEQUENCE_BITS)) {
+            warnDrift(((next - now) >> SEQUENCE_BITS) * 1000 >> TICK_BITS);
+        }
+        return (next >>> SEQUENCE_BITS) << (WORKER_BITS + SEQUENCE_BITS)
+                | worker << SEQUENCE_BITS
+                | (next & SEQUENCE_MASK);
+    }
+
+    private void warnDrift(long driftMillis) {
+        long now = System.currentTimeMillis();
+        if (now - lastDriftWarnMillis > 10_000) {
+            lastDriftWarnMillis = now;
+            log.warn("id timestamps run {}ms ahead of the clock, the clock moved back or ids are drawn too fast", driftMillis);
+        }
+    }
+
+    // start at a random id so nodes starting together rarely race for the same one
+    private synchronized void lease() {
+        int start = ThreadLocalRandom.current().nextInt(MAX_WORKERS);
+        for (int i = 0; i < MAX_WORKERS; i++) {
+            int candidate = (start + i) % MAX_WORKERS;
+            long callStart = clock.getAsLong();
+            String last = stringRedisTemplate.execute(LEASE_SCRIPT, Collections.singletonList(ID_WORKER_KEY + candidate),
+                    token, String.valueOf(leaseMillis()), String.valueOf(KEEP_SECONDS));
+            if (last != null && !"-1".equals(last)) {
+                // never go back behind the ids the previous holder issued
+                state.accumulateAndGet(Long.parseLong(last), Math::max);
+                leaseDeadline = deadlineFrom(callStart);
+                workerId = candidate;
+                log.info("leased worker id {}", candidate);
+                return;
+            }
+        }
+        throw new IllegalStateException("all " + MAX_WORKERS + " worker ids are leased");
+    }
+
+    private long leaseMillis() {
+        return TimeUnit.SECONDS.toMillis(leaseSeconds);
+    }
+
+    // measured from before the call and cut by a tenth, so it ends before redis lets the lease go
+    private long deadlineFrom(long callStart) {
+        return callStart + leaseMillis() - leaseMillis() / 10;
+    }
+
+    @Scheduled(fixedDelayString = "${hmdp.id.worker-heartbeat-ms:10000}")
+    public void heartbeat() {
+        if (!enabled()) {
+            return;
+        }
+        long id = workerId;
+        try {
+            if (id < 0) {
+                lease();
+                return;
+            }
+            long callStart = clock.getAsLong();
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(ID_WORKER_KEY + id),
+                    token, String.valueOf(leaseMillis()), String.valueOf(KEEP_SECONDS), String.valueOf(state.get()));
+            if (renewed == null || renewed == 0) {
+                // expired and possibly taken by another node, stop using it at once
+                log.error("lost the lease of worker id {}, leasing a new one", id);
+                workerId = -1;
+                lease();
+                return;
+            }
+            leaseDeadline = deadlineFrom(callStart);
+        } catch (Exception e) {
+            if (clock.getAsLong() >= leaseDeadline) {
+                log.error("failed to renew worker id {}, the lease ran out and no ids are issued", id, e);
+            } else {
+                log.warn("failed to renew worker id {}", id, e);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled());
+        stats.put("workerId", workerId);
+        stats.put("leaseRemainingMillis", Math.max(leaseDeadline - clock.getAsLong(), 0));
+        long last = state.get();
+        stats.put("lastTimestampSeconds", ((last >>> SEQUENCE_BITS) + EPOCH_TICKS) >> TICK_BITS);
+        stats.put("lastSequence", last & SEQUENCE_MASK);
+        return stats;
+    }
+}
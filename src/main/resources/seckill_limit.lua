@@ -0,0 +1,41 @@
+-- token buckets checked together: a request takes one token from every bucket or from none
+-- KEYS[i]: bucket hash {tokens, ts}, all under the limit:{seckill}: hash tag so they share a cluster slot;
+-- ARGV[2i-1], ARGV[2i]: refill rate per second and burst of KEYS[i]
+-- returns {0, 0} when admitted, else {i, wait} with the bucket that needs the longest wait and the wait in ms
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local tokens = {}
+local rejected, wait = 0, 0
+for i = 1, #KEYS do
+    local rate = tonumber(ARGV[i * 2 - 1])
+    local burst = tonumber(ARGV[i * 2])
+    local bucket = redis.call('hmget', KEYS[i], 'tokens', 'ts')
+    local t = tonumber(bucket[1])
+    local ts = tonumber(bucket[2])
+    if (t == nil or ts == nil) then
+        t = burst
+        ts = now
+    end
+    t = math.min(burst, t + math.max(now - ts, 0) * rate / 1000)
+    tokens[i] = t
+    if (t < 1) then
+        local w = math.ceil((1 - t) * 1000 / rate)
+        if (w > wait) then
+            rejected, wait = i, w
+        end
+    end
+end
+if (rejected > 0) then
+    return {rejected, wait}
+end
+
+for i = 1, #KEYS do
+    local rate = tonumber(ARGV[i * 2 - 1])
+    local burst = tonumber(ARGV[i * 2])
+    redis.call('hmset', KEYS[i], 'tokens', tokens[i] - 1, 'ts', now)
+    -- a bucket left alone until it is full again is the same as no bucket
+    redis.call('pexpire', KEYS[i], math.ceil(burst * 1000 / rate) + 1000)
+end
+return {0, 0}
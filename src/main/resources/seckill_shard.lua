@@ -0,0 +1,7 @@
+-- take one unit from a stock shard, KEYS[1]: seckill:stock:<voucherId>:<shard>
+local stock = tonumber(redis.call('get', KEYS[1]))
+if (stock == nil or stock <= 0) then
+    return 0
+end
+redis.call('incrby', KEYS[1], -1)
+return 1
@@ -0,0 +1,20 @@
+-- take a worker id that is free or whose lease ran out
+-- KEYS[1]: id:worker:<n>; ARGV[1]: token, ARGV[2]: lease millis, ARGV[3]: seconds to keep the key
+-- the value is token:leaseEndMillis:lastState and outlives the lease, so the next holder learns the
+-- last state (timestamp and sequence) issued under this worker id. the state stays a string, lua numbers
+-- are doubles and would round it
+-- returns the last state, or -1 if the id is held
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local last = '0'
+local value = redis.call('get', KEYS[1])
+if (value) then
+    local token, leaseEnd, state = string.match(value, '^([^:]*):(%d+):(%d+)$')
+    if (token == nil or tonumber(leaseEnd) > now) then
+        return '-1'
+    end
+    last = state
+end
+redis.call('set', KEYS[1], ARGV[1] .. ':' .. (now + tonumber(ARGV[2])) .. ':' .. last, 'EX', ARGV[3])
+return last
@@ -0,0 +1,8 @@
+-- end the lease of this node at once, keeping the last state issued for the next holder
+-- KEYS[1]: id:worker:<n>; ARGV[1]: token, ARGV[2]: seconds to keep the key, ARGV[3]: last state
+local value = redis.call('get', KEYS[1])
+if (value == false or string.match(value, '^([^:]*):') ~= ARGV[1]) then
+    return 0
+end
+redis.call('set', KEYS[1], ':0:' .. ARGV[3], 'EX', ARGV[2])
+return 1
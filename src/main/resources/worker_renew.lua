@@ -0,0 +1,11 @@
+-- extend the worker id lease only if this node still holds it, and record the last state issued
+-- KEYS[1]: id:worker:<n>; ARGV[1]: token, ARGV[2]: lease millis, ARGV[3]: seconds to keep the key, ARGV[4]: last state
+redis.replicate_commands()
+local value = redis.call('get', KEYS[1])
+if (value == false or string.match(value, '^([^:]*):') ~= ARGV[1]) then
+    return 0
+end
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+redis.call('set', KEYS[1], ARGV[1] .. ':' .. (now + tonumber(ARGV[2])) .. ':' .. ARGV[4], 'EX', ARGV[3])
+return 1
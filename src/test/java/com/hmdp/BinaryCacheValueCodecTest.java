@@ -0,0 +1,166 @@
+package com.hmdp;
+
+import com.hmdp.utils.BinaryCacheValueCodec;
+import com.hmdp.utils.JsonCacheValueCodec;
+import com.hmdp.utils.RedisData;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCacheValueCodecTest {
+
+    private final BinaryCacheValueCodec codec = new BinaryCacheValueCodec(new JsonCacheValueCodec());
+
+    // whole seconds, the header keeps epoch millis only
+    private final LocalDateTime expireTime = LocalDateTime.of(2026, 1, 15, 12, 30, 45);
+
+    @Test
+    void roundTripKeepsValuesAndNulls() {
+        Sample sample = new Sample();
+        sample.setId(42L);
+        sample.setName("茶餐厅");
+        sample.setCount(null);
+        sample.setScore(4.5);
+        sample.setOpen(true);
+        sample.setUpdateTime(LocalDateTime.of(2025, 6, 1, 8, 0, 0, 123_456_789));
+
+        byte[] bytes = codec.encode(redisData(sample, 37L));
+        assertTrue(BinaryCacheValueCodec.isBinary(bytes));
+
+        RedisData decoded = codec.decode(bytes, Sample.class);
+        assertEquals(sample, decoded.getData());
+        assertNull(((Sample) decoded.getData()).getCount());
+        assertEquals(expireTime, decoded.getExpireTime());
+        assertEquals(37L, decoded.getRebuildMillis());
+    }
+
+    @Test
+    void nullBitmapSpansSeveralBytes() {
+        Wide wide = new Wide();
+        wide.setF00(0);
+        wide.setF02(2);
+        wide.setF05(5);
+        wide.setF08(8);
+        wide.setF09(9);
+
+        RedisData decoded = codec.decode(codec.encode(redisData(wide, 0L)), Wide.class);
+        assertEquals(wide, decoded.getData());
+
+        Wide empty = new Wide();
+        assertEquals(empty, codec.decode(codec.encode(redisData(empty, 0L)), Wide.class).getData());
+    }
+
+    @Test
+    void schemaMismatchDropsData() {
+        Sample sample = new Sample();
+        sample.setId(1L);
+
+        RedisData decoded = codec.decode(codec.encode(redisData(sample, 5L)), Other.class);
+        assertNull(decoded.getData());
+        // the header is still usable, the caller treats the value as expired data
+        assertEquals(expireTime, decoded.getExpireTime());
+        assertEquals(5L, decoded.getRebuildMillis());
+    }
+
+    @Test
+    void readsVersionOneHeader() {
+        Sample sample = new Sample();
+        sample.setId(7L);
+        sample.setName("v1");
+        byte[] v2 = codec.encode(redisData(sample, 99L));
+        assertEquals(2, v2[1]);
+
+        // version 1 had no rebuildMillis between the expire time and the payload
+        ByteBuffer v1 = ByteBuffer.allocate(v2.length - 4);
+        v1.put(v2, 0, 10);
+        v1.put(v2, 14, v2.length - 14);
+        v1.put(1, (byte) 1);
+
+        RedisData decoded = codec.decode(v1.array(), Sample.class);
+        assertEquals(sample, decoded.getData());
+        assertEquals(expireTime, decoded.getExpireTime());
+        assertEquals(0L, decoded.getRebuildMillis());
+        assertEquals(codec.readExpireTime(v2), codec.readExpireTime(v1.array()));
+        assertEquals(0L, codec.readRebuildMillis(v1.array()));
+    }
+
+    @Test
+    void headerIsReadWithoutThePayload() {
+        Sample sample = new Sample();
+        sample.setName("header");
+        byte[] bytes = codec.encode(redisData(sample, 250L));
+
+        // a payload that does not decode, the header reads never touch it
+        byte[] header = Arrays.copyOf(bytes, 14);
+        long expireMillis = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(expireMillis, codec.readExpireTime(header));
+        assertEquals(250L, codec.readRebuildMillis(header));
+
+        JsonCacheValueCodec json = new JsonCacheValueCodec();
+        byte[] jsonBytes = json.encode(redisData(sample, 250L));
+        assertEquals(expireMillis, json.readExpireTime(jsonBytes));
+        assertEquals(250L, json.readRebuildMillis(jsonBytes));
+    }
+
+    @Test
+    void unsupportedTypesFallBackToJson() {
+        WithList value = new WithList();
+        value.setIds(List.of(1L, 2L));
+
+        byte[] bytes = codec.encode(redisData(value, 0L));
+        assertFalse(BinaryCacheValueCodec.isBinary(bytes));
+        assertFalse(BinaryCacheValueCodec.isBinary("{\"data\":{}}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(BinaryCacheValueCodec.isBinary(new byte[]{(byte) 0xCB, 2}));
+    }
+
+    private RedisData redisData(Object data, long rebuildMillis) {
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setExpireTime(expireTime);
+        redisData.setRebuildMillis(rebuildMillis);
+        return redisData;
+    }
+
+    @Data
+    public static class Sample {
+        private Long id;
+        private String name;
+        private Integer count;
+        private Double score;
+        private Boolean open;
+        private LocalDateTime updateTime;
+    }
+
+    @Data
+    public static class Other {
+        private Long id;
+        private String title;
+    }
+
+    @Data
+    public static class Wide {
+        private Integer f00;
+        private Integer f01;
+        private Integer f02;
+        private Integer f03;
+        private Integer f04;
+        private Integer f05;
+        private Integer f06;
+        private Integer f07;
+        private Integer f08;
+        private Integer f09;
+    }
+
+    @Data
+    public static class WithList {
+        private List<Long> ids;
+    }
+}
@@ -0,0 +1,34 @@
+package com.hmdp;
+
+import com.hmdp.utils.CursorUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CursorUtilsTest {
+
+    @Test
+    void roundTrip() {
+        String cursor = CursorUtils.encode(45, 1200, 9007199254740993L);
+        assertArrayEquals(new long[]{45, 1200, 9007199254740993L}, CursorUtils.decode(cursor, 3));
+        assertArrayEquals(new long[]{-1, 0}, CursorUtils.decode(CursorUtils.encode(-1, 0), 2));
+        // url-safe, it goes into query strings as is
+        assertFalse(cursor.contains("+") || cursor.contains("/") || cursor.contains("="));
+    }
+
+    @Test
+    void rejectsBlankOrMalformedCursors() {
+        assertNull(CursorUtils.decode(null, 3));
+        assertNull(CursorUtils.decode("", 3));
+        assertNull(CursorUtils.decode("  ", 3));
+        assertNull(CursorUtils.decode("not a cursor", 3));
+        assertNull(CursorUtils.decode(CursorUtils.encode("a", "b", "c"), 3));
+        assertNull(CursorUtils.decode(CursorUtils.encode(1, 2.5, 3), 3));
+    }
+
+    @Test
+    void rejectsWrongPartCount() {
+        assertNull(CursorUtils.decode(CursorUtils.encode(1, 2), 3));
+        assertNull(CursorUtils.decode(CursorUtils.encode(1, 2, 3, 4), 3));
+    }
+}
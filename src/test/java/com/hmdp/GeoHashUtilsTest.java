@@ -0,0 +1,57 @@
+package com.hmdp;
+
+import com.hmdp.utils.GeoHashUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeoHashUtilsTest {
+
+    @Test
+    void encodesKnownHashes() {
+        assertEquals("ezs42", GeoHashUtils.encode(-5.6, 42.6, 5));
+        assertEquals("wtmkq06", GeoHashUtils.encode(120.15, 30.28, 7));
+        assertEquals("s0000000", GeoHashUtils.encode(0, 0, 8));
+        assertEquals("zzzz", GeoHashUtils.encode(180, 90, 4));
+    }
+
+    @Test
+    void decodesToCellCenter() {
+        double[] center = GeoHashUtils.decode("ezs42");
+        assertEquals(-5.60302734375, center[0], 1e-12);
+        assertEquals(42.60498046875, center[1], 1e-12);
+    }
+
+    @Test
+    void cellSizeHalvesWithEveryBit() {
+        assertArrayEquals(new double[]{45, 45}, GeoHashUtils.cellSize(1));
+        assertArrayEquals(new double[]{11.25, 5.625}, GeoHashUtils.cellSize(2));
+        // precision 6 is about 1.2 km by 0.6 km
+        assertArrayEquals(new double[]{360 / Math.pow(2, 15), 180 / Math.pow(2, 15)}, GeoHashUtils.cellSize(6));
+    }
+
+    @Test
+    void cellContainsEncodedPoint() {
+        Random random = new Random(12);
+        for (int precision = 1; precision <= 12; precision++) {
+            double[] size = GeoHashUtils.cellSize(precision);
+            double halfWidth = size[0] / 2;
+            double halfHeight = size[1] / 2;
+            for (int i = 0; i < 200; i++) {
+                double x = random.nextDouble() * 360 - 180;
+                double y = random.nextDouble() * 180 - 90;
+                String hash = GeoHashUtils.encode(x, y, precision);
+                assertEquals(precision, hash.length());
+
+                double[] center = GeoHashUtils.decode(hash);
+                assertTrue(Math.abs(center[0] - x) <= halfWidth, hash);
+                assertTrue(Math.abs(center[1] - y) <= halfHeight, hash);
+                // the center is in its own cell, and a longer hash refines a shorter one
+                assertEquals(hash, GeoHashUtils.encode(center[0], center[1], precision));
+                assertTrue(GeoHashUtils.encode(x, y, 12).startsWith(hash));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hmdp;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.hmdp.utils.RedisIdWorker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisIdWorker: one INCR per id vs leased segments.
+ * Needs a local redis, run with the main method; surefire skips it by name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class RedisIdWorkerBenchmark {
+
+    private static final String KEY_PREFIX = "bench:order";
+
+    @Param({"incr", "segment"})
+    private String mode;
+
+    @Param({"1000"})
+    private int segmentSize;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisIdWorker idWorker;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", 6379));
+        connectionFactory.afterPropertiesSet();
+        idWorker = new RedisIdWorker();
+        ReflectUtil.setFieldValue(idWorker, "stringRedisTemplate", new StringRedisTemplate(connectionFactory));
+        ReflectUtil.setFieldValue(idWorker, "mode", mode);
+        ReflectUtil.setFieldValue(idWorker, "segmentSize", segmentSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public Long nextId() {
+        return idWorker.nextId(KEY_PREFIX);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RedisIdWorkerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,94 @@
+package com.hmdp;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.hmdp.utils.RedisIdWorker;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RedisIdWorkerTest {
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    // local midnight between 2026-01-15 and 2026-01-16
+    private final long midnight = LocalDate.of(2026, 1, 16).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final AtomicLong now = new AtomicLong(midnight - 1000);
+
+    @Test
+    void segmentsHandOutConsecutiveCounts() {
+        RedisIdWorker worker = worker("segment");
+        long prev = 0;
+        for (int i = 1; i <= 25; i++) {
+            long id = worker.nextId("order");
+            assertEquals(i, id & COUNT_MASK);
+            assertTrue(id > prev);
+            prev = id;
+        }
+        // three segments of 10, the third one fetched ahead
+        assertEquals(30, counters.get("icr:order20260115").get());
+    }
+
+    @Test
+    void segmentOfYesterdayIsDropped() {
+        RedisIdWorker worker = worker("segment");
+        long before = 0;
+        // the 9th id starts fetching the next segment of the same day
+        for (int i = 1; i <= 9; i++) {
+            before = worker.nextId("order");
+        }
+        assertEquals(9, before & COUNT_MASK);
+
+        now.set(midnight + 1000);
+        long after = worker.nextId("order");
+        assertEquals(1, after & COUNT_MASK);
+        assertEquals((before >>> 32) + 2, after >>> 32);
+        assertEquals(10, counters.get("icr:order20260116").get());
+        assertEquals(2, worker.nextId("order") & COUNT_MASK);
+    }
+
+    @Test
+    void incrUsesOneCounterPerDay() {
+        RedisIdWorker worker = worker("incr");
+        assertEquals(1, worker.nextId("order") & COUNT_MASK);
+        assertEquals(2, worker.nextId("order") & COUNT_MASK);
+        now.set(midnight);
+        assertEquals(1, worker.nextId("order") & COUNT_MASK);
+        assertEquals(2, counters.get("icr:order20260115").get());
+        assertEquals(1, counters.get("icr:order20260116").get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisIdWorker worker(String mode) {
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(template.opsForValue()).thenReturn(ops);
+        when(ops.increment(anyString())).thenAnswer(inv -> counter(inv.getArgument(0)).incrementAndGet());
+        when(ops.increment(anyString(), anyLong())).thenAnswer(inv -> counter(inv.getArgument(0)).addAndGet(inv.getArgument(1)));
+
+        RedisIdWorker worker = new RedisIdWorker();
+        ReflectUtil.setFieldValue(worker, "stringRedisTemplate", template);
+        ReflectUtil.setFieldValue(worker, "clock", (LongSupplier) now::get);
+        ReflectUtil.setFieldValue(worker, "mode", mode);
+        ReflectUtil.setFieldValue(worker, "segmentSize", 10);
+        ReflectUtil.setFieldValue(worker, "prefetchRatio", 0.8);
+        return worker;
+    }
+
+    private AtomicLong counter(String key) {
+        return counters.computeIfAbsent(key, k -> new AtomicLong());
+    }
+}
@@ -0,0 +1,115 @@
+package com.hmdp;
+
+import com.hmdp.utils.ShopSpatialIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.domain.geo.GeoReference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_RADIUS;
+
+/**
+ * Nearby-shop search: redis GEOSEARCH vs the in-memory {@link ShopSpatialIndex}.
+ * Needs a local redis, run with the main method; surefire skips it by name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ShopGeoBenchmark {
+
+    private static final String BENCH_KEY = "bench:shop:geo";
+    private static final double CENTER_X = 120.15;
+    private static final double CENTER_Y = 30.28;
+    // roughly 20 km around the center
+    private static final double SPREAD = 0.2;
+
+    @Param({"1000", "100000"})
+    private int shops;
+
+    @Param({"10", "50"})
+    private int limit;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private ShopSpatialIndex index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", 6379));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        stringRedisTemplate.delete(BENCH_KEY);
+
+        index = new ShopSpatialIndex();
+        Random random = new Random(42);
+        List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(1000);
+        for (long id = 1; id <= shops; id++) {
+            double x = CENTER_X + (random.nextDouble() - 0.5) * SPREAD;
+            double y = CENTER_Y + (random.nextDouble() - 0.5) * SPREAD;
+            index.put(id, 1L, x, y);
+            locations.add(new RedisGeoCommands.GeoLocation<>(String.valueOf(id), new Point(x, y)));
+            if (locations.size() == 1000) {
+                stringRedisTemplate.opsForGeo().add(BENCH_KEY, locations);
+                locations.clear();
+            }
+        }
+        if (!locations.isEmpty()) {
+            stringRedisTemplate.opsForGeo().add(BENCH_KEY, locations);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stringRedisTemplate.delete(BENCH_KEY);
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public GeoResults<RedisGeoCommands.GeoLocation<String>> redisGeoSearch() {
+        return stringRedisTemplate.opsForGeo().search(
+                BENCH_KEY,
+                GeoReference.fromCoordinate(randomX(), randomY()),
+                new Distance(SHOP_GEO_RADIUS),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(limit)
+        );
+    }
+
+    @Benchmark
+    public Map<Long, Double> localIndexSearch() {
+        return index.search(1L, randomX(), randomY(), SHOP_GEO_RADIUS, limit);
+    }
+
+    private static double randomX() {
+        return CENTER_X + (ThreadLocalRandom.current().nextDouble() - 0.5) * SPREAD;
+    }
+
+    private static double randomY() {
+        return CENTER_Y + (ThreadLocalRandom.current().nextDouble() - 0.5) * SPREAD;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ShopGeoBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,141 @@
+package com.hmdp;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.ShopSearchIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopSearchIndexTest {
+
+    private static final String NAME_CHARS = "茶餐厅咖啡馆小吃面";
+    private static final String ADDRESS_CHARS = "西湖区文三路号餐厅";
+
+    private final ShopSearchIndex index = new ShopSearchIndex();
+
+    @Test
+    void pagesMatchBruteForce() {
+        Random random = new Random(15);
+        Map<Long, Shop> shops = new HashMap<>();
+        for (long id = 1; id <= 500; id++) {
+            // few distinct scores and sales, so the id decides many ties
+            Shop shop = shop(id, randomText(random, NAME_CHARS, 2 + random.nextInt(5)),
+                    randomText(random, ADDRESS_CHARS, 3 + random.nextInt(6)), random.nextInt(5), random.nextInt(3));
+            shops.put(id, shop);
+            index.put(shop);
+        }
+
+        List<String> queries = new ArrayList<>(Arrays.asList("", " ", "茶", "餐厅", "咖啡 馆", "路号", "湖区文", "没有"));
+        for (int i = 0; i < 30; i++) {
+            queries.add(randomText(random, NAME_CHARS + ADDRESS_CHARS, 1 + random.nextInt(3)));
+        }
+        for (String query : queries) {
+            List<Long> expected = bruteForce(shops.values(), query);
+            for (int limit : new int[]{1, 7, 50, 1000}) {
+                assertEquals(expected, readAll(query, limit), query + " / " + limit);
+            }
+        }
+    }
+
+    @Test
+    void singleCharactersMatchNamesOnly() {
+        index.put(shop(1L, "咖啡馆", "文三路", 5, 0));
+        index.put(shop(2L, "面馆", "咖啡街", 4, 0));
+
+        assertEquals(Collections.singletonList(1L), index.search("咖", null, 10).getIds());
+        assertEquals(Arrays.asList(1L, 2L), index.search("咖啡", null, 10).getIds());
+        assertEquals(Arrays.asList(1L, 2L), index.search("馆", null, 10).getIds());
+        assertTrue(index.search("路", null, 10).getIds().isEmpty());
+    }
+
+    @Test
+    void ranksByScoreThenSoldThenId() {
+        index.put(shop(1L, "茶馆", "", 40, 10));
+        index.put(shop(2L, "茶馆", "", 45, 0));
+        index.put(shop(3L, "茶馆", "", 40, 10));
+        index.put(shop(4L, "茶馆", "", 40, 99));
+        index.put(shop(5L, "茶馆", null, null, null));
+
+        assertEquals(Arrays.asList(2L, 4L, 3L, 1L, 5L), index.search("茶馆", null, 10).getIds());
+        assertEquals(Arrays.asList(2L, 4L, 3L, 1L, 5L), index.search(null, null, 10).getIds());
+    }
+
+    @Test
+    void updatesAndRemovesLeaveNoStalePostings() {
+        index.put(shop(1L, "咖啡馆", "文三路", 5, 0));
+        index.put(shop(2L, "咖啡馆", "文三路", 4, 0));
+
+        // renamed and re-scored, only the new grams and the new rank apply
+        index.put(shop(1L, "面馆", "文三路", 3, 0));
+        assertEquals(Collections.singletonList(2L), index.search("咖啡", null, 10).getIds());
+        assertEquals(Collections.singletonList(1L), index.search("面馆", null, 10).getIds());
+        assertEquals(Arrays.asList(2L, 1L), index.search("文三", null, 10).getIds());
+
+        index.remove(2L);
+        index.remove(3L);
+        assertTrue(index.search("咖啡", null, 10).getIds().isEmpty());
+        assertEquals(Collections.singletonList(1L), index.search("", null, 10).getIds());
+        assertEquals(1, index.stats().get("shops"));
+    }
+
+    @Test
+    void cursorOfRemovedShopStillPages() {
+        for (long id = 1; id <= 5; id++) {
+            index.put(shop(id, "茶馆", "", (int) id, 0));
+        }
+        ShopSearchIndex.Page first = index.search("茶", null, 2);
+        assertEquals(Arrays.asList(5L, 4L), first.getIds());
+        assertNotNull(first.getCursor());
+
+        // the cursor keeps the sort key, so the next page starts right after it
+        index.remove(4L);
+        ShopSearchIndex.Page second = index.search("茶", first.getCursor(), 2);
+        assertEquals(Arrays.asList(3L, 2L), second.getIds());
+        ShopSearchIndex.Page third = index.search("茶", second.getCursor(), 2);
+        assertEquals(Collections.singletonList(1L), third.getIds());
+        assertNull(third.getCursor());
+
+        // a malformed cursor starts over
+        assertEquals(Arrays.asList(5L, 3L), index.search("茶", "garbage", 2).getIds());
+    }
+
+    private List<Long> readAll(String query, int limit) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            ShopSearchIndex.Page page = index.search(query, cursor, limit);
+            assertTrue(page.getIds().size() <= limit);
+            // a cursor is only handed out when another match follows
+            assertTrue(page.getCursor() == null || page.getIds().size() == limit);
+            ids.addAll(page.getIds());
+            cursor = page.getCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private static List<Long> bruteForce(Collection<Shop> shops, String query) {
+        String q = query.replaceAll("\\s", "");
+        return shops.stream()
+                .filter(s -> s.getName().contains(q) || q.length() > 1 && s.getAddress().contains(q))
+                .sorted(Comparator.comparing(Shop::getScore).reversed()
+                        .thenComparing(Comparator.comparing(Shop::getSold).reversed())
+                        .thenComparing(Comparator.comparing(Shop::getId).reversed()))
+                .map(Shop::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static String randomText(Random random, String chars, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return text.toString();
+    }
+
+    private static Shop shop(Long id, String name, String address, Integer score, Integer sold) {
+        return new Shop().setId(id).setName(name).setAddress(address).setScore(score).setSold(sold);
+    }
+}
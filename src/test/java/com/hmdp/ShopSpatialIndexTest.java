@@ -0,0 +1,102 @@
+package com.hmdp;
+
+import com.hmdp.utils.ShopSpatialIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShopSpatialIndexTest {
+
+    private static final double X = 120.15;
+    private static final double Y = 30.28;
+
+    private final ShopSpatialIndex index = new ShopSpatialIndex();
+
+    @Test
+    void searchMatchesBruteForce() {
+        Random random = new Random(11);
+        Map<Long, double[]> shops = new HashMap<>();
+        for (long id = 1; id <= 2000; id++) {
+            // type, x, y within about 5 km
+            double[] shop = {1 + random.nextInt(3), X + (random.nextDouble() - 0.5) * 0.1, Y + (random.nextDouble() - 0.5) * 0.1};
+            shops.put(id, shop);
+            index.put(id, (long) shop[0], shop[1], shop[2]);
+        }
+        assertEquals(2000, index.size());
+
+        for (int i = 0; i < 50; i++) {
+            double x = X + (random.nextDouble() - 0.5) * 0.1;
+            double y = Y + (random.nextDouble() - 0.5) * 0.1;
+            Long typeId = i % 4 == 0 ? null : (long) (1 + random.nextInt(3));
+            double radius = 200 + random.nextInt(3000);
+            int limit = 1 + random.nextInt(30);
+
+            Map<Long, Double> hits = index.search(typeId, x, y, radius, limit);
+            List<Long> expected = shops.entrySet().stream()
+                    .filter(e -> typeId == null || (long) e.getValue()[0] == typeId)
+                    .filter(e -> distance(e.getValue(), x, y) <= radius)
+                    .sorted(Comparator.comparingDouble(e -> distance(e.getValue(), x, y)))
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            assertEquals(expected, new ArrayList<>(hits.keySet()));
+            hits.forEach((id, distance) -> assertEquals(distance(shops.get(id), x, y), distance, 1e-6));
+        }
+    }
+
+    @Test
+    void distanceAgreesWithRedis() {
+        // one degree of latitude on the redis earth radius
+        assertEquals(111226.30, ShopSpatialIndex.distance(0, 0, 0, 1), 0.01);
+        assertEquals(0, ShopSpatialIndex.distance(X, Y, X, Y), 1e-9);
+        assertEquals(ShopSpatialIndex.distance(X, Y, X + 0.01, Y + 0.02),
+                ShopSpatialIndex.distance(X + 0.01, Y + 0.02, X, Y), 1e-9);
+    }
+
+    @Test
+    void searchesAcrossCellBorders() {
+        // both sides of the 120.15 and 30.28 cell edges, with the query point on the corner
+        index.put(1L, 1L, X - 0.0001, Y - 0.0001);
+        index.put(2L, 1L, X + 0.0001, Y - 0.0001);
+        index.put(3L, 1L, X - 0.0001, Y + 0.0001);
+        index.put(4L, 1L, X + 0.0002, Y + 0.0002);
+        index.put(5L, 2L, X, Y);
+
+        Map<Long, Double> hits = index.search(1L, X, Y, 100, 10);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L, 4L)), hits.keySet());
+        assertEquals(4L, new ArrayList<>(hits.keySet()).get(3));
+        assertEquals(Collections.singletonList(5L), new ArrayList<>(index.search(2L, X, Y, 100, 10).keySet()));
+        assertEquals(5L, index.search(null, X, Y, 100, 1).keySet().iterator().next());
+        assertTrue(index.search(3L, X, Y, 100, 10).isEmpty());
+        assertTrue(index.search(1L, X, Y, 100, 0).isEmpty());
+    }
+
+    @Test
+    void removeAndMoveKeepCellsCurrent() {
+        index.put(1L, 1L, X, Y);
+        index.put(2L, 1L, X + 0.001, Y);
+        index.remove(1L);
+        assertEquals(Collections.singletonList(2L), new ArrayList<>(index.search(1L, X, Y, 500, 10).keySet()));
+
+        // moved two cells away, only found at the new place
+        index.put(2L, 1L, X + 0.03, Y);
+        assertTrue(index.search(1L, X, Y, 500, 10).isEmpty());
+        assertEquals(Collections.singletonList(2L), new ArrayList<>(index.search(1L, X + 0.03, Y, 500, 10).keySet()));
+
+        // a type change moves it to the other type's cells
+        index.put(2L, 3L, X + 0.03, Y);
+        assertTrue(index.search(1L, X + 0.03, Y, 500, 10).isEmpty());
+        assertEquals(1, index.search(3L, X + 0.03, Y, 500, 10).size());
+        assertEquals(1, index.size());
+
+        index.put(3L, 1L, null, Y);
+        assertEquals(1, index.size());
+    }
+
+    private static double distance(double[] shop, double x, double y) {
+        return ShopSpatialIndex.distance(x, y, shop[1], shop[2]);
+    }
+}
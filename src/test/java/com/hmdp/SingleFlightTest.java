@@ -0,0 +1,106 @@
+package com.hmdp;
+
+import com.hmdp.utils.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("shop:1", () -> {
+                    await(release);
+                    return loads.incrementAndGet();
+                })));
+            }
+            // the loader is held until every other caller has joined it
+            waitUntil(() -> singleFlight.getShared() == CALLERS - 1);
+            release.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(1, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, singleFlight.getExecutions());
+        assertEquals(0, singleFlight.getInFlight());
+    }
+
+    @Test
+    void failureReachesEveryCaller() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("shop:1", () -> {
+                    await(release);
+                    throw new IllegalStateException("db down");
+                })));
+            }
+            waitUntil(() -> singleFlight.getShared() == CALLERS - 1);
+            release.countDown();
+            for (Future<Integer> result : results) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertEquals("db down", e.getCause().getMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, singleFlight.getExecutions());
+        assertEquals(0, singleFlight.getInFlight());
+    }
+
+    @Test
+    void keyIsReleasedAfterLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals(1, singleFlight.execute("shop:1", loads::incrementAndGet));
+        assertEquals(0, singleFlight.getInFlight());
+        // a later call loads again instead of reusing the finished result
+        assertEquals(2, singleFlight.execute("shop:1", loads::incrementAndGet));
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("shop:2", () -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(0, singleFlight.getInFlight());
+        assertEquals(3, singleFlight.getExecutions());
+        assertEquals(0, singleFlight.getShared());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+}
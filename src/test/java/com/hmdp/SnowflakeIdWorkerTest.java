@@ -0,0 +1,197 @@
+package com.hmdp;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SnowflakeIdWorker;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SnowflakeIdWorkerTest {
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int WORKER_BITS = 10;
+
+    // 12:00:00.250 local time, a quarter second into the tick range of that second
+    private final long start = LocalDateTime.of(2026, 3, 1, 12, 0, 0, 250_000_000)
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    private final AtomicLong now = new AtomicLong(start);
+
+    @Test
+    void idLayout() {
+        SnowflakeIdWorker worker = worker(5);
+        long first = worker.nextId();
+        long second = worker.nextId();
+
+        assertEquals(5, workerOf(first));
+        assertEquals(0, sequenceOf(first));
+        assertEquals(first + 1, second);
+        // 1024 ticks per second, 250ms in is tick 256 of the second
+        long seconds = redisIdWorker().nextId("order") >>> 32;
+        assertEquals(seconds << 10 | 256, ticksOf(first));
+    }
+
+    @Test
+    void sameSecondAsRedisIdWorker() {
+        SnowflakeIdWorker worker = worker(1023);
+        RedisIdWorker redisIdWorker = redisIdWorker();
+        for (long offset : new long[]{-251, -250, 0, 1, 500, 749, 750, 86_400_000}) {
+            now.set(start + offset);
+            long seconds = redisIdWorker.nextId("order") >>> 32;
+            assertEquals(seconds, worker.nextId() >>> 32, "offset " + offset);
+        }
+    }
+
+    @Test
+    void sequenceOverflowMovesToNextTick() {
+        SnowflakeIdWorker worker = worker(3);
+        long first = worker.nextId();
+        long prev = first;
+        for (int i = 1; i < 4096; i++) {
+            long id = worker.nextId();
+            assertEquals(prev + 1, id);
+            prev = id;
+        }
+        assertEquals(4095, sequenceOf(prev));
+        assertEquals(ticksOf(first), ticksOf(prev));
+
+        // the clock has not moved, the 4097th id takes the next tick
+        long overflow = worker.nextId();
+        assertEquals(ticksOf(first) + 1, ticksOf(overflow));
+        assertEquals(0, sequenceOf(overflow));
+        assertEquals(3, workerOf(overflow));
+        assertTrue(overflow > prev);
+
+        // once the clock catches up, ids follow the clock again
+        now.addAndGet(10);
+        long caughtUp = worker.nextId();
+        assertEquals(0, sequenceOf(caughtUp));
+        assertTrue(ticksOf(caughtUp) > ticksOf(overflow));
+    }
+
+    @Test
+    void clockRollbackKeepsIdsIncreasing() {
+        SnowflakeIdWorker worker = worker(7);
+        long before = worker.nextId();
+
+        now.addAndGet(-5000);
+        long after = worker.nextId();
+        assertEquals(before + 1, after);
+        assertEquals(ticksOf(before), ticksOf(after));
+
+        // still ahead of the rolled back clock until it passes the last tick
+        now.addAndGet(4000);
+        assertEquals(after + 1, worker.nextId());
+        now.addAndGet(2000);
+        long ahead = worker.nextId();
+        assertTrue(ticksOf(ahead) > ticksOf(after));
+        assertEquals(0, sequenceOf(ahead));
+    }
+
+    @Test
+    void stopsWhenLeaseRunsOut() {
+        SnowflakeIdWorker worker = worker(1);
+        ReflectUtil.setFieldValue(worker, "leaseDeadline", start + 1000);
+        worker.nextId();
+        now.set(start + 999);
+        worker.nextId();
+        now.set(start + 1000);
+        assertThrows(IllegalStateException.class, worker::nextId);
+
+        ReflectUtil.setFieldValue(worker, "workerId", -1L);
+        now.set(start);
+        assertThrows(IllegalStateException.class, worker::nextId);
+    }
+
+    @Test
+    void newHolderStartsAfterLastState() {
+        SnowflakeIdWorker previous = worker(9);
+        // the previous holder drew ids a minute ahead of this node's clock
+        now.set(start + 60_000);
+        long last = previous.nextId();
+        long state = ((AtomicLong) ReflectUtil.getFieldValue(previous, "state")).get();
+        now.set(start);
+
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        when(template.execute(any(), anyList(), any(), any(), any())).thenReturn(String.valueOf(state));
+        SnowflakeIdWorker worker = new SnowflakeIdWorker();
+        ReflectUtil.setFieldValue(worker, "stringRedisTemplate", template);
+        ReflectUtil.setFieldValue(worker, "clock", (LongSupplier) now::get);
+        ReflectUtil.setFieldValue(worker, "leaseSeconds", 30L);
+        ReflectUtil.setFieldValue(worker, "maxClockDriftMillis", 1000L);
+        ReflectUtil.invoke(worker, "lease");
+
+        // lease deadline is measured from before the call and cut by a tenth
+        assertEquals(start + 27_000, (long) ReflectUtil.getFieldValue(worker, "leaseDeadline"));
+        long id = worker.nextId();
+        assertEquals(ticksOf(last), ticksOf(id));
+        assertEquals(sequenceOf(last) + 1, sequenceOf(id));
+    }
+
+    @Test
+    void freeWorkerIdStartsFromClock() {
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        when(template.execute(any(), anyList(), any(), any(), any())).thenReturn("0");
+        when(template.execute(any(), anyList(), any(), any(), any(), any())).thenReturn(1L);
+        SnowflakeIdWorker worker = new SnowflakeIdWorker();
+        ReflectUtil.setFieldValue(worker, "stringRedisTemplate", template);
+        ReflectUtil.setFieldValue(worker, "clock", (LongSupplier) now::get);
+        ReflectUtil.setFieldValue(worker, "mode", "snowflake");
+        ReflectUtil.setFieldValue(worker, "leaseSeconds", 30L);
+        ReflectUtil.setFieldValue(worker, "maxClockDriftMillis", 1000L);
+        ReflectUtil.invoke(worker, "lease");
+
+        long id = worker.nextId();
+        assertEquals(0, sequenceOf(id));
+        assertEquals(redisIdWorker().nextId("order") >>> 32, id >>> 32);
+
+        // a renewal moves the deadline on
+        now.set(start + 20_000);
+        worker.heartbeat();
+        now.set(start + 30_000);
+        assertTrue(worker.nextId() > id);
+    }
+
+    private SnowflakeIdWorker worker(long workerId) {
+        SnowflakeIdWorker worker = new SnowflakeIdWorker();
+        ReflectUtil.setFieldValue(worker, "clock", (LongSupplier) now::get);
+        ReflectUtil.setFieldValue(worker, "workerId", workerId);
+        ReflectUtil.setFieldValue(worker, "leaseDeadline", Long.MAX_VALUE);
+        ReflectUtil.setFieldValue(worker, "maxClockDriftMillis", 1000L);
+        return worker;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisIdWorker redisIdWorker() {
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(template.opsForValue()).thenReturn(ops);
+        when(ops.increment(anyString())).thenReturn(1L);
+        RedisIdWorker worker = new RedisIdWorker();
+        ReflectUtil.setFieldValue(worker, "stringRedisTemplate", template);
+        ReflectUtil.setFieldValue(worker, "clock", (LongSupplier) now::get);
+        return worker;
+    }
+
+    private static long ticksOf(long id) {
+        return id >>> (WORKER_BITS + SEQUENCE_BITS);
+    }
+
+    private static long workerOf(long id) {
+        return id >>> SEQUENCE_BITS & ((1 << WORKER_BITS) - 1);
+    }
+
+    private static long sequenceOf(long id) {
+        return id & ((1 << SEQUENCE_BITS) - 1);
+    }
+}